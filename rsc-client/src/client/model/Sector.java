@@ -5,6 +5,11 @@ import java.nio.ByteBuffer;
 
 /**
  * A 2D grid of Tiles.
+ * 
+ * <p>Tile attributes are stored in primitive arrays (one per attribute)
+ * rather than as individual Tile objects, so that a Sector can be decoded
+ * and copied without allocating thousands of small objects, and so that
+ * scanning an attribute across the Sector touches contiguous memory.
  */
 public class Sector {
 
@@ -27,62 +32,243 @@ public class Sector {
      * Total number of faces within a Sector.
      */
     public static final int NUM_FACES = NUM_TILES * 2;
-    
+
+    /**
+     * Size of the packed data for a single Tile, in bytes.
+     */
+    public static final int TILE_SIZE = 10;
+
     /**
-     * An array containing all the tiles within this Sector.
+     * Size of the packed data for a Sector, in bytes.
+     */
+    public static final int PACKED_SIZE = NUM_TILES * TILE_SIZE;
+
+    /*
+     * Tile attributes, indexed by tile.
+     * 
+     * See Tile for a description of each attribute.
      */
-    private Tile[] tiles;
+    private byte[] groundElevation;
+    private byte[] texture;
+    private byte[] groundOverlay;
+    private byte[] roofTexture;
+    private byte[] horizontalWall;
+    private byte[] verticalWall;
+    private int[] diagonalWalls;
+
+    /**
+     * Collision flags of each tile.
+     * 
+     * <p>These are derived from the other attributes (see Collision), so
+     * are not included in the packed data.
+     */
+    private int[] collision;
 
     /**
      * Creates a new Sector full of blank tiles.
      */
     public Sector() {
-        tiles = new Tile[NUM_TILES];
-        for (int i = 0; i < tiles.length; i++) {
-            tiles[i] = new Tile();
-        }
+        groundElevation = new byte[NUM_TILES];
+        texture = new byte[NUM_TILES];
+        groundOverlay = new byte[NUM_TILES];
+        roofTexture = new byte[NUM_TILES];
+        horizontalWall = new byte[NUM_TILES];
+        verticalWall = new byte[NUM_TILES];
+        diagonalWalls = new int[NUM_TILES];
+        collision = new int[NUM_TILES];
+    }
+
+    private Sector(Sector other) {
+        groundElevation = other.groundElevation.clone();
+        texture = other.texture.clone();
+        groundOverlay = other.groundOverlay.clone();
+        roofTexture = other.roofTexture.clone();
+        horizontalWall = other.horizontalWall.clone();
+        verticalWall = other.verticalWall.clone();
+        diagonalWalls = other.diagonalWalls.clone();
+        collision = other.collision.clone();
+    }
+
+    /**
+     * Creates a deep copy of this Sector.
+     */
+    public Sector copy() {
+        return new Sector(this);
     }
 
     /**
      * Sets the the Tile at the given coords.
      */
     public void setTile(int x, int z, Tile t) {
-        setTile(x * Sector.WIDTH + z, t);
+        setTile(getIndex(x, z), t);
     }
 
     /**
      * Sets the Tile at the given index.
      */
     private void setTile(int i, Tile t) {
-        tiles[i] = t;
+        groundElevation[i] = t.groundElevation;
+        texture[i] = t.texture;
+        groundOverlay[i] = t.groundOverlay;
+        roofTexture[i] = t.roofTexture;
+        horizontalWall[i] = t.horizontalWall;
+        verticalWall[i] = t.verticalWall;
+        diagonalWalls[i] = t.diagonalWalls;
     }
 
     /**
      * Gets the Tile at the given coords.
+     * 
+     * <p>The returned Tile is a copy; changes to it will not affect this
+     * Sector.
      */
     public Tile getTile(int x, int z) {
-        return getTile(x * Sector.WIDTH + z);
+        return getTile(getIndex(x, z));
     }
 
     /**
      * Gets the Tile at the given index.
+     * 
+     * <p>The returned Tile is a copy; changes to it will not affect this
+     * Sector.
      */
     public Tile getTile(int i) {
-        return tiles[i];
+        Tile tile = new Tile();
+        tile.groundElevation = groundElevation[i];
+        tile.texture = texture[i];
+        tile.groundOverlay = groundOverlay[i];
+        tile.roofTexture = roofTexture[i];
+        tile.horizontalWall = horizontalWall[i];
+        tile.verticalWall = verticalWall[i];
+        tile.diagonalWalls = diagonalWalls[i];
+        return tile;
+    }
+
+    /**
+     * Gets the index of the Tile at the given coords.
+     */
+    private static int getIndex(int x, int z) {
+        return x * Sector.WIDTH + z;
+    }
+
+    public byte getGroundElevation(int x, int z) {
+        return groundElevation[getIndex(x, z)];
+    }
+
+    public byte getTexture(int x, int z) {
+        return texture[getIndex(x, z)];
+    }
+
+    public byte getGroundOverlay(int x, int z) {
+        return groundOverlay[getIndex(x, z)];
+    }
+
+    public void setGroundOverlay(int x, int z, byte groundOverlay) {
+        setGroundOverlay(getIndex(x, z), groundOverlay);
+    }
+
+    public void setGroundOverlay(int i, byte groundOverlay) {
+        this.groundOverlay[i] = groundOverlay;
+    }
+
+    public byte getRoofTexture(int x, int z) {
+        return roofTexture[getIndex(x, z)];
+    }
+
+    public byte getHorizontalWall(int x, int z) {
+        return horizontalWall[getIndex(x, z)];
+    }
+
+    public void setHorizontalWall(int x, int z, byte horizontalWall) {
+        this.horizontalWall[getIndex(x, z)] = horizontalWall;
+    }
+
+    public byte getVerticalWall(int x, int z) {
+        return verticalWall[getIndex(x, z)];
+    }
+
+    public void setVerticalWall(int x, int z, byte verticalWall) {
+        this.verticalWall[getIndex(x, z)] = verticalWall;
+    }
+
+    public int getDiagonalWalls(int x, int z) {
+        return diagonalWalls[getIndex(x, z)];
+    }
+
+    public void setDiagonalWalls(int x, int z, int diagonalWalls) {
+        this.diagonalWalls[getIndex(x, z)] = diagonalWalls;
+    }
+
+    public int getCollision(int x, int z) {
+        return collision[getIndex(x, z)];
+    }
+
+    public void setCollision(int x, int z, int collision) {
+        this.collision[getIndex(x, z)] = collision;
+    }
+
+    /**
+     * Copies all Tiles into a TileGrid.
+     * 
+     * <p>Each row of tiles (along the z-axis) is contiguous in both, so this
+     * is one bulk copy per row and attribute.
+     * 
+     * @param grid
+     * @param start Index of this Sector's first tile within the grid.
+     * @param gridDepth Depth of the grid, in tiles.
+     */
+    void copyTo(TileGrid grid, int start, int gridDepth) {
+        copyTo(grid, start, gridDepth, 0, 0, WIDTH, DEPTH);
+    }
+
+    /**
+     * Copies the Tiles within the given bounds into a TileGrid.
+     * 
+     * @param grid
+     * @param start Index of this Sector's first tile within the grid.
+     * @param gridDepth Depth of the grid, in tiles.
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    void copyTo(TileGrid grid, int start, int gridDepth,
+            int minX, int minZ, int maxX, int maxZ) {
+        int length = maxZ - minZ;
+        for (int x = minX; x < maxX; x++) {
+            int src = x * DEPTH + minZ;
+            int dest = start + x * gridDepth + minZ;
+            System.arraycopy(groundElevation, src, grid.groundElevation, dest, length);
+            System.arraycopy(texture, src, grid.texture, dest, length);
+            System.arraycopy(groundOverlay, src, grid.groundOverlay, dest, length);
+            System.arraycopy(roofTexture, src, grid.roofTexture, dest, length);
+            System.arraycopy(horizontalWall, src, grid.horizontalWall, dest, length);
+            System.arraycopy(verticalWall, src, grid.verticalWall, dest, length);
+            System.arraycopy(diagonalWalls, src, grid.diagonalWalls, dest, length);
+            System.arraycopy(collision, src, grid.collision, dest, length);
+        }
     }
 
     /**
      * Writes the Sector raw data into a ByteBuffer.
      */
     public ByteBuffer pack() throws IOException {
-        ByteBuffer out = ByteBuffer.allocate(10 * tiles.length);
+        byte[] data = new byte[PACKED_SIZE];
 
-        for (int i = 0; i < tiles.length; i++) {
-            out.put(tiles[i].pack());
+        for (int i = 0, j = 0; i < NUM_TILES; i++, j += TILE_SIZE) {
+            data[j] = groundElevation[i];
+            data[j + 1] = texture[i];
+            data[j + 2] = groundOverlay[i];
+            data[j + 3] = roofTexture[i];
+            data[j + 4] = horizontalWall[i];
+            data[j + 5] = verticalWall[i];
+            data[j + 6] = (byte) (diagonalWalls[i] >> 24);
+            data[j + 7] = (byte) (diagonalWalls[i] >> 16);
+            data[j + 8] = (byte) (diagonalWalls[i] >> 8);
+            data[j + 9] = (byte) diagonalWalls[i];
         }
 
-        out.flip();
-        return out;
+        return ByteBuffer.wrap(data);
     }
 
     /**
@@ -90,14 +276,28 @@ public class Sector {
      */
     public static Sector unpack(ByteBuffer in) throws IOException {
         
-        if (in.remaining() < (10 * NUM_TILES)) {
+        if (in.remaining() < PACKED_SIZE) {
             throw new IOException("Provided buffer too short");
         }
         
+        // Read the whole Sector at once, then split it into columns
+        byte[] data = new byte[PACKED_SIZE];
+        in.get(data);
+        
         Sector sector = new Sector();
 
-        for (int i = 0; i < NUM_TILES; i++) {
-            sector.setTile(i, Tile.unpack(in));
+        for (int i = 0, j = 0; i < NUM_TILES; i++, j += TILE_SIZE) {
+            sector.groundElevation[i] = data[j];
+            sector.texture[i] = data[j + 1];
+            sector.groundOverlay[i] = data[j + 2];
+            sector.roofTexture[i] = data[j + 3];
+            sector.horizontalWall[i] = data[j + 4];
+            sector.verticalWall[i] = data[j + 5];
+            sector.diagonalWalls[i] =
+                    (data[j + 6] & 0xff) << 24 |
+                    (data[j + 7] & 0xff) << 16 |
+                    (data[j + 8] & 0xff) << 8 |
+                    (data[j + 9] & 0xff);
         }
 
         return sector;
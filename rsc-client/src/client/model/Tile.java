@@ -43,6 +43,23 @@ public class Tile {
      */
     public byte groundOverlay;
 
+    /**
+     * Creates a copy of this Tile.
+     */
+    public Tile copy() {
+        Tile tile = new Tile();
+
+        tile.groundElevation = groundElevation;
+        tile.texture = texture;
+        tile.groundOverlay = groundOverlay;
+        tile.roofTexture = roofTexture;
+        tile.horizontalWall = horizontalWall;
+        tile.verticalWall = verticalWall;
+        tile.diagonalWalls = diagonalWalls;
+
+        return tile;
+    }
+
     /**
      * Writes the Tile raw data into a ByteBuffer.
      */
@@ -0,0 +1,170 @@
+package client.model;
+
+import java.util.Arrays;
+
+/**
+ * A contiguous 2D grid of Tiles spanning several Sectors.
+ * 
+ * <p>Like a Sector, Tile attributes are stored in primitive arrays, indexed
+ * by <code>x * depth + z</code>. This allows a Tile anywhere in the grid to
+ * be found with a single bounds check and array index, rather than by first
+ * finding the Sector that contains it.
+ * 
+ * <p>Tiles outside the grid are treated as blank.
+ * 
+ * @author Dan Bryce
+ */
+public class TileGrid {
+
+    /**
+     * Size of the grid, in tiles.
+     */
+    private int width;
+    private int depth;
+
+    /*
+     * Tile attributes, indexed by tile.
+     * 
+     * See Tile for a description of each attribute.
+     */
+    byte[] groundElevation;
+    byte[] texture;
+    byte[] groundOverlay;
+    byte[] roofTexture;
+    byte[] horizontalWall;
+    byte[] verticalWall;
+    int[] diagonalWalls;
+    int[] collision;
+
+    public TileGrid(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        
+        int numTiles = width * depth;
+        groundElevation = new byte[numTiles];
+        texture = new byte[numTiles];
+        groundOverlay = new byte[numTiles];
+        roofTexture = new byte[numTiles];
+        horizontalWall = new byte[numTiles];
+        verticalWall = new byte[numTiles];
+        diagonalWalls = new int[numTiles];
+        collision = new int[numTiles];
+    }
+
+    /**
+     * Resets every Tile to blank.
+     */
+    public void clear() {
+        Arrays.fill(groundElevation, (byte) 0);
+        Arrays.fill(texture, (byte) 0);
+        Arrays.fill(groundOverlay, (byte) 0);
+        Arrays.fill(roofTexture, (byte) 0);
+        Arrays.fill(horizontalWall, (byte) 0);
+        Arrays.fill(verticalWall, (byte) 0);
+        Arrays.fill(diagonalWalls, 0);
+        Arrays.fill(collision, 0);
+    }
+
+    /**
+     * Copies all Tiles of the given Sector into the grid.
+     * 
+     * @param x Position of the Sector's first tile within the grid.
+     * @param z Position of the Sector's first tile within the grid.
+     * @param sector
+     */
+    public void setSector(int x, int z, Sector sector) {
+        sector.copyTo(this, x * depth + z, depth);
+    }
+
+    /**
+     * Copies the Tiles of the given Sector that lie within the given bounds
+     * into the grid.
+     * 
+     * @param x Position of the Sector's first tile within the grid.
+     * @param z Position of the Sector's first tile within the grid.
+     * @param sector
+     * @param minX Tile co-ordinate relative to the Sector.
+     * @param minZ Tile co-ordinate relative to the Sector.
+     * @param maxX Tile co-ordinate relative to the Sector (exclusive).
+     * @param maxZ Tile co-ordinate relative to the Sector (exclusive).
+     */
+    public void setSector(int x, int z, Sector sector,
+            int minX, int minZ, int maxX, int maxZ) {
+        sector.copyTo(this, x * depth + z, depth, minX, minZ, maxX, maxZ);
+    }
+
+    public boolean contains(int x, int z) {
+        return x >= 0 && x < width && z >= 0 && z < depth;
+    }
+
+    public byte getGroundElevation(int x, int z) {
+        return contains(x, z) ? groundElevation[x * depth + z] : 0;
+    }
+
+    public byte getTexture(int x, int z) {
+        return contains(x, z) ? texture[x * depth + z] : 0;
+    }
+
+    public byte getGroundOverlay(int x, int z) {
+        return contains(x, z) ? groundOverlay[x * depth + z] : 0;
+    }
+
+    public void setGroundOverlay(int x, int z, byte groundOverlay) {
+        if (contains(x, z)) {
+            this.groundOverlay[x * depth + z] = groundOverlay;
+        }
+    }
+
+    public byte getRoofTexture(int x, int z) {
+        return contains(x, z) ? roofTexture[x * depth + z] : 0;
+    }
+
+    public byte getHorizontalWall(int x, int z) {
+        return contains(x, z) ? horizontalWall[x * depth + z] : 0;
+    }
+
+    public void setHorizontalWall(int x, int z, byte horizontalWall) {
+        if (contains(x, z)) {
+            this.horizontalWall[x * depth + z] = horizontalWall;
+        }
+    }
+
+    public byte getVerticalWall(int x, int z) {
+        return contains(x, z) ? verticalWall[x * depth + z] : 0;
+    }
+
+    public void setVerticalWall(int x, int z, byte verticalWall) {
+        if (contains(x, z)) {
+            this.verticalWall[x * depth + z] = verticalWall;
+        }
+    }
+
+    public int getDiagonalWalls(int x, int z) {
+        return contains(x, z) ? diagonalWalls[x * depth + z] : 0;
+    }
+
+    public void setDiagonalWalls(int x, int z, int diagonalWalls) {
+        if (contains(x, z)) {
+            this.diagonalWalls[x * depth + z] = diagonalWalls;
+        }
+    }
+
+    public int getCollision(int x, int z) {
+        return contains(x, z) ? collision[x * depth + z] : 0;
+    }
+
+    public void setCollision(int x, int z, int collision) {
+        if (contains(x, z)) {
+            this.collision[x * depth + z] = collision;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+}
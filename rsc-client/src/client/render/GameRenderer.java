@@ -6,6 +6,8 @@ import java.awt.image.BufferedImage;
 import client.Canvas;
 import client.Input;
 import client.RsLauncher;
+import client.model.Mob;
+import client.model.Sector;
 import client.scene.Camera;
 import client.scene.Scene;
 import client.states.Game;
@@ -29,6 +31,12 @@ public class GameRenderer {
 
     private static final int FOG_DISTANCE = 2300;
     
+    /**
+     * Distance beyond the default that can be seen, since more Sectors are
+     * loaded than usual.
+     */
+    private int extraViewDistance;
+    
     private Game game;
     private Input input;
     private World world;
@@ -37,6 +45,7 @@ public class GameRenderer {
 
     private SceneRenderer sceneRenderer;
     private MousePicker mousePicker;
+    private RoofCuller roofCuller;
 
     private Canvas canvas;
     private BufferedImage image;
@@ -54,6 +63,15 @@ public class GameRenderer {
         
         sceneRenderer = new SceneRenderer(scene, width, height);
         mousePicker = sceneRenderer.getMousePicker();
+        roofCuller = new RoofCuller(world, scene);
+        
+        // Each extra Sector loaded lets us see half a Sector further
+        int extraSectors = Math.min(
+                world.getSectorsX() - World.DEFAULT_SECTORS_X,
+                world.getSectorsZ() - World.DEFAULT_SECTORS_Z);
+        extraViewDistance = Math.max(0, extraSectors) *
+                Sector.WIDTH * World.TILE_WIDTH / 2;
+        sceneRenderer.setClipFar(sceneRenderer.getClipFar() + extraViewDistance);
 
         canvas = new Canvas(width, height);
         image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -87,27 +105,23 @@ public class GameRenderer {
         /*
          * Buildings
          */
-        for (int i = 0; i < 64; i++) {
+        for (int storey = 0; storey < Scene.NUM_STOREYS; storey++) {
             
-            scene.removeModel(world.getRoofModel(layer, i));
-            if (layer == 0) {
-                // Remove roofs from upper storeys
-                scene.removeModel(world.getWallModel(1, i));
-                scene.removeModel(world.getRoofModel(1, i));
-                scene.removeModel(world.getWallModel(2, i));
-                scene.removeModel(world.getRoofModel(2, i));
-
-                // Add roof of current layer
-                // TODO: Don't add roofs or upper storeys if player is indoors!
-                scene.addModel(world.getRoofModel(layer, i));
-                
-                // Add upper storeys
-                scene.addModel(world.getWallModel(1, i));
-                scene.addModel(world.getRoofModel(1, i));
-                scene.addModel(world.getWallModel(2, i));
-                scene.addModel(world.getRoofModel(2, i));
-            }
+            // Upper storeys should be visible from the ground floor
+            boolean visible = storey == layer ||
+                    (layer == 0 && (storey == 1 || storey == 2));
+            scene.setLayerEnabled(Scene.getWallLayer(storey), visible);
+            
+            // Roofs are only visible from the ground floor
+            scene.setLayerEnabled(Scene.getRoofLayer(storey),
+                    visible && layer == 0);
         }
+        
+        // Hide roofs and upper storeys of the building the player is in
+        Mob player = game.getCurrentPlayer();
+        roofCuller.update(
+                player.x / World.TILE_WIDTH,
+                player.z / World.TILE_DEPTH);
 
         /*
          * Doors
@@ -115,7 +129,7 @@ public class GameRenderer {
         for (int i = 0; i < world.getNumDoors(); i++) {
             Door door = world.getDoor(i);
             if (world.containsTileRelativeToOrigin(door.getX(), door.getZ())) {
-                scene.addModel(door.getModel());
+                scene.addModel(door.getModel(), Scene.LAYER_DOORS);
             }
         }
     }
@@ -134,7 +148,8 @@ public class GameRenderer {
         camera.setCamera(x, y, z, pitch, yaw, roll, height);
 
         // Update fog distance based on camera height
-        scene.fogZDistance = FOG_DISTANCE + (game.getCameraHeight() * 2);
+        scene.fogZDistance = FOG_DISTANCE + extraViewDistance +
+                (game.getCameraHeight() * 2);
     }
 
     public MousePicker getMousePicker() {
@@ -14,14 +14,26 @@ public class MousePicker {
     private int mousePickedCount;
     private Model mousePickedModels[] = new Model[MAX_MOUSE_PICKS];
     private int mousePickedFaces[] = new int[MAX_MOUSE_PICKS];
+    private int mousePickedX[] = new int[MAX_MOUSE_PICKS];
+    private int mousePickedZ[] = new int[MAX_MOUSE_PICKS];
 
     public MousePicker(int baseX) {
         this.baseX = baseX;
     }
 
-    public void add(Model gameModel, int faceId) {
+    /**
+     * Records a face beneath the mouse.
+     * 
+     * @param gameModel
+     * @param faceId
+     * @param x World x co-ordinate of the point beneath the mouse.
+     * @param z World z co-ordinate of the point beneath the mouse.
+     */
+    public void add(Model gameModel, int faceId, int x, int z) {
         mousePickedModels[mousePickedCount] = gameModel;
         mousePickedFaces[mousePickedCount] = faceId;
+        mousePickedX[mousePickedCount] = x;
+        mousePickedZ[mousePickedCount] = z;
         mousePickedCount++;
     }
 
@@ -37,6 +49,14 @@ public class MousePicker {
         return mousePickedFaces;
     }
     
+    public int[] getMousePickedX() {
+        return mousePickedX;
+    }
+    
+    public int[] getMousePickedZ() {
+        return mousePickedZ;
+    }
+    
     public int getMouseX() {
         return mouseX;
     }
@@ -0,0 +1,190 @@
+package client.render;
+
+import java.util.Arrays;
+
+import client.scene.Model;
+import client.scene.Scene;
+import client.world.World;
+
+/**
+ * Hides the roofs and upper storeys of the building the player is in.
+ * 
+ * <p>The player is indoors if their tile is covered by a roof on any layer
+ * from the current one upwards. The building is then found by flood-filling
+ * outwards across covered tiles, and the roof and upper-storey models of
+ * every chunk it overlaps are hidden.
+ * 
+ * <p>The flood fill only runs when the player moves to a different tile,
+ * and, like the PathFinder, it uses pre-allocated storage.
+ * 
+ * @author Dan Bryce
+ */
+public class RoofCuller {
+
+    private World world;
+    private Scene scene;
+
+    /**
+     * Size of the window, in tiles.
+     */
+    private int numTilesX;
+    private int numTilesZ;
+
+    /**
+     * Fill in which each tile was last visited.
+     */
+    private int[] visited;
+
+    /**
+     * Tiles waiting to be expanded.
+     */
+    private int[] queue;
+
+    /**
+     * Number of the current fill.
+     */
+    private int fill;
+
+    /**
+     * Whether the roofs and upper storeys of each chunk should be hidden.
+     */
+    private boolean[] hiddenChunks;
+
+    /**
+     * Position for which hiddenChunks was last calculated.
+     */
+    private int prevTileX = -1;
+    private int prevTileZ = -1;
+    private int prevOriginX;
+    private int prevOriginZ;
+    private int prevLayer;
+
+    public RoofCuller(World world, Scene scene) {
+        this.world = world;
+        this.scene = scene;
+        
+        numTilesX = world.getNumTilesX();
+        numTilesZ = world.getNumTilesZ();
+        
+        visited = new int[numTilesX * numTilesZ];
+        queue = new int[numTilesX * numTilesZ];
+        hiddenChunks = new boolean[world.getNumChunks()];
+    }
+
+    /**
+     * Shows or hides roofs and upper storeys for the player's current
+     * position.
+     * 
+     * <p>This should be called every frame, since models may have been
+     * replaced since the last frame.
+     * 
+     * @param tileX Player's tile co-ordinate relative to the World origin.
+     * @param tileZ Player's tile co-ordinate relative to the World origin.
+     */
+    public void update(int tileX, int tileZ) {
+        
+        int layer = world.getCurrentLayer();
+        
+        if (tileX != prevTileX || tileZ != prevTileZ || layer != prevLayer ||
+                world.getOriginX() != prevOriginX ||
+                world.getOriginZ() != prevOriginZ) {
+            findBuilding(tileX, tileZ, layer);
+            prevTileX = tileX;
+            prevTileZ = tileZ;
+            prevLayer = layer;
+            prevOriginX = world.getOriginX();
+            prevOriginZ = world.getOriginZ();
+        }
+        
+        for (int i = 0; i < hiddenChunks.length; i++) {
+            for (int storey = layer; storey < Scene.NUM_STOREYS; storey++) {
+                setHidden(world.getRoofModel(storey, i), hiddenChunks[i]);
+                if (storey > layer) {
+                    setHidden(world.getWallModel(storey, i), hiddenChunks[i]);
+                }
+            }
+        }
+    }
+
+    private void setHidden(Model model, boolean hidden) {
+        if (model != null) {
+            scene.setModelHidden(model, hidden);
+        }
+    }
+
+    /**
+     * Finds the chunks overlapped by the building containing the given tile.
+     * 
+     * @param tileX
+     * @param tileZ
+     * @param layer
+     */
+    private void findBuilding(int tileX, int tileZ, int layer) {
+        
+        Arrays.fill(hiddenChunks, false);
+        
+        // Roofs on this layer or any above it
+        int roofMask = -1 << layer;
+        
+        if (!world.containsTileRelativeToOrigin(tileX, tileZ) ||
+                (world.getRoofLayers(tileX, tileZ) & roofMask) == 0) {
+            // Player is outdoors
+            return;
+        }
+        
+        fill++;
+        if (fill == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            fill = 1;
+        }
+        
+        int head = 0;
+        int tail = 0;
+        
+        int start = tileX * numTilesZ + tileZ;
+        queue[tail++] = start;
+        visited[start] = fill;
+        
+        while (head < tail) {
+            
+            int tile = queue[head++];
+            int x = tile / numTilesZ;
+            int z = tile % numTilesZ;
+            
+            hiddenChunks[(x / World.CHUNK_WIDTH) +
+                    (z / World.CHUNK_DEPTH) * (numTilesX / World.CHUNK_WIDTH)] = true;
+            
+            tail = visit(x - 1, z, roofMask, tail);
+            tail = visit(x + 1, z, roofMask, tail);
+            tail = visit(x, z - 1, roofMask, tail);
+            tail = visit(x, z + 1, roofMask, tail);
+        }
+    }
+
+    /**
+     * Adds a tile to the queue, if it is covered and has not been visited.
+     * 
+     * @param x
+     * @param z
+     * @param roofMask
+     * @param tail
+     * @return New end of the queue.
+     */
+    private int visit(int x, int z, int roofMask, int tail) {
+        
+        if (!world.containsTileRelativeToOrigin(x, z)) {
+            return tail;
+        }
+        
+        int tile = x * numTilesZ + z;
+        if (visited[tile] == fill ||
+                (world.getRoofLayers(x, z) & roofMask) == 0) {
+            return tail;
+        }
+        
+        visited[tile] = fill;
+        queue[tail] = tile;
+        return tail + 1;
+    }
+
+}
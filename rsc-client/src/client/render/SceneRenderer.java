@@ -33,6 +33,12 @@ public class SceneRenderer {
     private int visiblePolygonCount;
     private Polygon visiblePolygons[] = new Polygon[MAX_POLYGONS];
     
+    /**
+     * Models found near the view frustum during the current frame.
+     */
+    private Model candidates[] = new Model[Scene.MAX_MODELS];
+    private int numCandidates;
+    
     private MousePicker mousePicker;
     
     private int rampCount = 50;
@@ -96,26 +102,63 @@ public class SceneRenderer {
                 VIEW_DISTANCE);
     }
 
+    /**
+     * Sets the maximum distance at which anything is drawn.
+     * 
+     * @param clipFar
+     */
+    public void setClipFar(int clipFar) {
+        clipFar3d = clipFar;
+        clipFar2d = clipFar;
+    }
+
+    public int getClipFar() {
+        return clipFar3d;
+    }
+
     public void render(Canvas canvas) {
         
         int clipXModified = clipX * clipFar3d >> viewDistance;
         int clipYModified = clipY * clipFar3d >> viewDistance;
         camera.prepareForRendering(clipX, clipY, clipFar3d, clipXModified, clipYModified);
-        scene.getModels()[scene.getNumModels()] = scene.getSpriteFaces();
-        scene.getSpriteFaces().transformState = 2;
         
-        for (int i = 0; i < scene.getNumModels(); i++) {
-            scene.getModels()[i].project(camera, viewDistance, clipNear);
+        // Only consider models within the grid cells covered by the frustum
+        numCandidates = scene.findModelsInArea(
+                camera.getFrustumMaxX(), camera.getFrustumFarZ(),
+                camera.getFrustumMinX(), camera.getFrustumNearZ(),
+                candidates);
+        
+        for (int i = 0; i < numCandidates; i++) {
+            
+            Model gameModel = candidates[i];
+            
+            if (!scene.isLayerEnabled(scene.getModelLayer(gameModel.sceneSlot))) {
+                // Model belongs to a hidden layer
+                gameModel.visible = false;
+                continue;
+            }
+            
+            if (scene.isModelHidden(gameModel.sceneSlot)) {
+                gameModel.visible = false;
+                continue;
+            }
+            
+            gameModel.project(camera, viewDistance, clipNear);
         }
         
-        scene.getModels()[scene.getNumModels()]
-                .project(camera, viewDistance, clipNear);
+        Model spriteFaces = scene.getSpriteFaces();
+        if (scene.isLayerEnabled(Scene.LAYER_SPRITES)) {
+            spriteFaces.transformState = 2;
+            spriteFaces.project(camera, viewDistance, clipNear);
+        } else {
+            spriteFaces.visible = false;
+        }
         visiblePolygonCount = 0;
         
         // Draw each model in the scene
-        for (int i = 0; i < scene.getNumModels(); i++) {
+        for (int i = 0; i < numCandidates; i++) {
             
-            Model gameModel = scene.getModels()[i];
+            Model gameModel = candidates[i];
             
             if (!gameModel.visible) {
                 // Model is not visible
@@ -209,7 +252,6 @@ public class SceneRenderer {
         }
 
         // Render 2d models (sprites)
-        Model spriteFaces = scene.getSpriteFaces();
         if (spriteFaces.visible) {
             for (int face = 0; face < spriteFaces.numFaces; face++) {
                 int faceVertices[] = spriteFaces.faceVertices[face];
@@ -1129,11 +1171,82 @@ public class SceneRenderer {
                     mouseX <= scanline.endX >> 8 &&
                     scanline.startX <= scanline.endX &&
                     !gameModel.unpickable) {
-                mousePicker.add(gameModel, faceId);
+                pick(gameModel, faceId, mouseX, mouseY - baseY);
             }
         }
     }
 
+    /**
+     * Records a face beneath the mouse, along with the point on the face that
+     * lies beneath it.
+     * 
+     * <p>The point is found by casting a ray from the camera through the
+     * mouse, and intersecting it with the plane of the face's first 3
+     * vertices.
+     * 
+     * @param gameModel
+     * @param faceId
+     * @param screenX Mouse position relative to the centre of the view.
+     * @param screenY Mouse position relative to the centre of the view.
+     */
+    private void pick(Model gameModel, int faceId, int screenX, int screenY) {
+        
+        int[] faceVerts = gameModel.faceVertices[faceId];
+        int v0 = faceVerts[0];
+        
+        if (gameModel.faceNumVertices[faceId] < 3) {
+            mousePicker.add(gameModel, faceId,
+                    gameModel.xPosition[v0], gameModel.zPosition[v0]);
+            return;
+        }
+        
+        int v1 = faceVerts[1];
+        int v2 = faceVerts[2];
+        
+        // Ray direction, in camera space
+        double dx = screenX;
+        double dy = screenY;
+        double dz = 1 << viewDistance;
+        
+        // Edges of the face, in camera space
+        double e1x = gameModel.projectVertexX[v1] - gameModel.projectVertexX[v0];
+        double e1y = gameModel.projectVertexY[v1] - gameModel.projectVertexY[v0];
+        double e1z = gameModel.projectVertexZ[v1] - gameModel.projectVertexZ[v0];
+        double e2x = gameModel.projectVertexX[v2] - gameModel.projectVertexX[v0];
+        double e2y = gameModel.projectVertexY[v2] - gameModel.projectVertexY[v0];
+        double e2z = gameModel.projectVertexZ[v2] - gameModel.projectVertexZ[v0];
+        
+        // Solve for the position of the hit along each edge
+        double px = dy * e2z - dz * e2y;
+        double py = dz * e2x - dx * e2z;
+        double pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        
+        double u = 0;
+        double v = 0;
+        
+        if (Math.abs(det) > 1e-6) {
+            double tx = -gameModel.projectVertexX[v0];
+            double ty = -gameModel.projectVertexY[v0];
+            double tz = -gameModel.projectVertexZ[v0];
+            double qx = ty * e1z - tz * e1y;
+            double qy = tz * e1x - tx * e1z;
+            double qz = tx * e1y - ty * e1x;
+            u = (tx * px + ty * py + tz * pz) / det;
+            v = (dx * qx + dy * qy + dz * qz) / det;
+        }
+        
+        // Apply the same position to the face in world space
+        int x = (int) (gameModel.xPosition[v0]
+                + u * (gameModel.xPosition[v1] - gameModel.xPosition[v0])
+                + v * (gameModel.xPosition[v2] - gameModel.xPosition[v0]));
+        int z = (int) (gameModel.zPosition[v0]
+                + u * (gameModel.zPosition[v1] - gameModel.zPosition[v0])
+                + v * (gameModel.zPosition[v2] - gameModel.zPosition[v0]));
+        
+        mousePicker.add(gameModel, faceId, x, z);
+    }
+
     private void rasterize(Canvas canvas, int numFaces, int vertexX[], int vertexY[], int vertexZ[], int textureId, Model gameModel) {
         
         if (textureId == -2) {
@@ -0,0 +1,147 @@
+package client.res;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import client.model.Sector;
+
+/**
+ * Uncompressed, indexed copy of the landscape archive, produced by
+ * {@link LandscapePacker}.
+ * 
+ * <p>The file is memory-mapped once, and each Sector's data is returned as a
+ * view of the mapped file, without any decompression or copying.
+ * 
+ * <p>The file begins with a fixed-size header (magic number, version, and the
+ * range of layers and Sector co-ordinates covered), followed by a table
+ * holding the offset of every Sector within that range (or -1 if it is
+ * absent), followed by the packed Sectors themselves. Since the table has a
+ * fixed layout, finding a Sector requires no searching.
+ * 
+ * <p>This class is thread-safe, as Sectors may be loaded by a background
+ * thread.
+ * 
+ * @author Dan Bryce
+ */
+public class LandscapePack {
+
+    /**
+     * Name of the pack within the data directory.
+     */
+    public static final String FILENAME = "Landscape.rscp";
+
+    /**
+     * Magic number at the start of the pack ("LAND").
+     */
+    public static final int MAGIC = 0x4c414e44;
+
+    /**
+     * Version of the pack format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the header, in bytes.
+     */
+    public static final int HEADER_SIZE = 28;
+
+    /**
+     * Contents of the pack.
+     */
+    private MappedByteBuffer data;
+
+    /**
+     * Number of layers covered by the pack.
+     */
+    private int numLayers;
+
+    /**
+     * Range of Sector co-ordinates covered by the pack.
+     */
+    private int minSectorX;
+    private int minSectorZ;
+    private int sectorsX;
+    private int sectorsZ;
+
+    /**
+     * Maps the given pack into memory.
+     * 
+     * @param file
+     * @throws IOException if the pack cannot be read, or is out of date.
+     */
+    public LandscapePack(File file) throws IOException {
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("Not a landscape pack: " + file);
+        }
+        
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Landscape pack is out of date: " + file +
+                    " (version " + version + ", expected " + VERSION + ")");
+        }
+        
+        numLayers = data.getInt(8);
+        minSectorX = data.getInt(12);
+        minSectorZ = data.getInt(16);
+        sectorsX = data.getInt(20);
+        sectorsZ = data.getInt(24);
+    }
+
+    /**
+     * Gets the packed data for the given Sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @return View of the Sector's data within the pack, or null if the
+     * Sector is absent.
+     */
+    public ByteBuffer getSector(int sectorX, int sectorZ, int layer) {
+        
+        int x = sectorX - minSectorX;
+        int z = sectorZ - minSectorZ;
+        
+        if (layer < 0 || layer >= numLayers ||
+                x < 0 || x >= sectorsX || z < 0 || z >= sectorsZ) {
+            return null;
+        }
+        
+        int offset = data.getInt(getTableOffset(
+                layer, x, z, sectorsX, sectorsZ));
+        if (offset == -1) {
+            return null;
+        }
+        
+        // Each caller gets its own view of the data
+        ByteBuffer in = data.duplicate();
+        in.position(offset);
+        in.limit(offset + Sector.PACKED_SIZE);
+        return in.slice();
+    }
+
+    /**
+     * Gets the position of a Sector's entry in the offset table.
+     * 
+     * @param layer
+     * @param x Sector x co-ordinate, relative to the first in the pack.
+     * @param z Sector z co-ordinate, relative to the first in the pack.
+     * @param sectorsX
+     * @param sectorsZ
+     * @return
+     */
+    static int getTableOffset(int layer, int x, int z,
+            int sectorsX, int sectorsZ) {
+        return HEADER_SIZE + ((layer * sectorsZ + z) * sectorsX + x) * 4;
+    }
+
+}
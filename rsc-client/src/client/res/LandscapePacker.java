@@ -0,0 +1,149 @@
+package client.res;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import client.model.Sector;
+import client.util.DataUtils;
+
+/**
+ * Build-time tool that converts the landscape archive into a
+ * {@link LandscapePack}.
+ * 
+ * <p>Usage: <code>LandscapePacker [input file] [output file]</code>, run from
+ * the directory containing <code>res/</code>. Both files are in the data
+ * directory by default.
+ * 
+ * @author Dan Bryce
+ */
+public class LandscapePacker {
+
+    private static final String LANDSCAPE_FILENAME = "Landscape.rscd";
+
+    /**
+     * Pattern of the entry names in the landscape archive.
+     */
+    private static final Pattern SECTOR_NAME_PATTERN =
+            Pattern.compile("h(\\d+)x(\\d+)y(\\d+)");
+
+    public static void main(String[] args) throws IOException {
+        
+        File input = new File(args.length > 0 ?
+                args[0] : Resources.DATA_DIR + LANDSCAPE_FILENAME);
+        File output = new File(args.length > 1 ?
+                args[1] : Resources.DATA_DIR + LandscapePack.FILENAME);
+        
+        try (ZipFile archive = new ZipFile(input)) {
+            int numSectors = pack(archive, output);
+            System.out.println("Packed " + numSectors + " sectors to " + output);
+        }
+    }
+
+    /**
+     * Writes every Sector in the given archive to a pack.
+     * 
+     * @param archive
+     * @param output
+     * @return Number of Sectors written.
+     * @throws IOException
+     */
+    private static int pack(ZipFile archive, File output) throws IOException {
+        
+        // Find the range covered by the archive
+        List<int[]> sectors = new ArrayList<>();
+        int numLayers = 0;
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            Matcher matcher = SECTOR_NAME_PATTERN.matcher(
+                    entries.nextElement().getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            
+            int layer = Integer.parseInt(matcher.group(1));
+            int sectorX = Integer.parseInt(matcher.group(2));
+            int sectorZ = Integer.parseInt(matcher.group(3));
+            sectors.add(new int[] { sectorX, sectorZ, layer });
+            
+            numLayers = Math.max(numLayers, layer + 1);
+            minX = Math.min(minX, sectorX);
+            minZ = Math.min(minZ, sectorZ);
+            maxX = Math.max(maxX, sectorX);
+            maxZ = Math.max(maxZ, sectorZ);
+        }
+        
+        if (sectors.isEmpty()) {
+            throw new IOException("No sectors found in " + archive.getName());
+        }
+        
+        int sectorsX = maxX - minX + 1;
+        int sectorsZ = maxZ - minZ + 1;
+        int dataStart = LandscapePack.getTableOffset(
+                numLayers, 0, 0, sectorsX, sectorsZ);
+        
+        ByteBuffer header = ByteBuffer.allocate(dataStart);
+        header.putInt(LandscapePack.MAGIC);
+        header.putInt(LandscapePack.VERSION);
+        header.putInt(numLayers);
+        header.putInt(minX);
+        header.putInt(minZ);
+        header.putInt(sectorsX);
+        header.putInt(sectorsZ);
+        while (header.hasRemaining()) {
+            header.putInt(-1);
+        }
+        
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw");
+                FileChannel channel = raf.getChannel()) {
+            
+            channel.truncate(0);
+            long offset = dataStart;
+            
+            for (int[] sector : sectors) {
+                
+                String name = "h" + sector[2] + "x" + sector[0] + "y" + sector[1];
+                ByteBuffer data = DataUtils.streamToBuffer(new BufferedInputStream(
+                        archive.getInputStream(archive.getEntry(name))));
+                
+                if (data.remaining() < Sector.PACKED_SIZE) {
+                    throw new IOException("Sector too short: " + name);
+                }
+                data.limit(data.position() + Sector.PACKED_SIZE);
+                
+                header.putInt(LandscapePack.getTableOffset(sector[2],
+                        sector[0] - minX, sector[1] - minZ, sectorsX, sectorsZ),
+                        (int) offset);
+                
+                while (data.hasRemaining()) {
+                    channel.write(data,
+                            offset + Sector.PACKED_SIZE - data.remaining());
+                }
+                offset += Sector.PACKED_SIZE;
+            }
+            
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        
+        return sectors.size();
+    }
+
+}
@@ -26,6 +26,8 @@ import client.entityhandling.defs.TextureDef;
 import client.entityhandling.defs.TileDef;
 import client.model.Sector;
 import client.util.DataUtils;
+import client.world.Collision;
+import client.world.MeshArchive;
 
 /**
  * Class responsible for reading and storing resources required by the game.
@@ -58,6 +60,33 @@ public class Resources {
      */
     public static ZipFile spriteArchive;
     public static ZipFile tileArchive;
+
+    /**
+     * Uncompressed landscape data; if present, this is used in place of the
+     * tileArchive.
+     */
+    public static LandscapePack landscapePack;
+
+    /**
+     * Pre-built Sectors; null if no archive is present.
+     */
+    public static MeshArchive meshArchive;
+
+    /**
+     * Summary of every tile in the world; null if no atlas is present.
+     */
+    public static WorldAtlas worldAtlas;
+
+    /**
+     * Default memory budget for decoded Sectors, in bytes.
+     */
+    private static final long SECTOR_CACHE_BUDGET = 16 * 1024 * 1024;
+
+    /**
+     * Recently-loaded Sectors.
+     */
+    public static SectorCache sectorCache =
+            new SectorCache(SECTOR_CACHE_BUDGET);
     
     /**
      * Loaded Sprites
@@ -163,27 +192,42 @@ public class Resources {
     }
 
     public static Sector loadSector(int sectionX, int sectionY, int layer) {
-        Sector s = null;
+        String filename = "h" + layer + "x" + sectionX + "y" + sectionY;
+        
+        Sector s = sectorCache.get(filename);
+        if (s != null) {
+            return s;
+        }
+        
         try {
-            String filename = "h" + layer + "x" + sectionX + "y" + sectionY;
-            ZipEntry e = tileArchive.getEntry(filename);
-            if (e == null) {
+            ByteBuffer data;
+            if (landscapePack != null) {
+                data = landscapePack.getSector(sectionX, sectionY, layer);
+            } else {
+                ZipEntry e = tileArchive.getEntry(filename);
+                data = e == null ? null : DataUtils.streamToBuffer(
+                        new BufferedInputStream(tileArchive.getInputStream(e)));
+            }
+            
+            if (data == null) {
                 s = new Sector();
                 if (layer == 0 || layer == 3) {
                     for (int i = 0; i < 2304; i++) {
-                        s.getTile(i).groundOverlay = (byte) (layer == 0 ? -6 : 8);
+                        s.setGroundOverlay(i, (byte) (layer == 0 ? -6 : 8));
                     }
                 }
             } else {
-                ByteBuffer data = DataUtils.streamToBuffer(
-                        new BufferedInputStream(tileArchive.getInputStream(e)));
                 s = Sector.unpack(data);
             }
+            Collision.build(s);
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(1);
         }
-        return s;
+        
+        // Keep the original safe from modification
+        sectorCache.put(filename, s);
+        return s.copy();
     }
 
     public static void initialiseArrays(int textureCount, int numTextureColours64, int numTextureColours128) {
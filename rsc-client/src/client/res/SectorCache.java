@@ -0,0 +1,133 @@
+package client.res;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import client.model.Sector;
+
+/**
+ * Least-recently-used cache of decoded Sectors.
+ * 
+ * <p>Sectors handed out by the cache are copies, since the WorldLoader
+ * modifies the Sectors it loads. This class is thread-safe, as Sectors may be
+ * loaded by a background thread.
+ * 
+ * @author Dan Bryce
+ */
+public class SectorCache {
+
+    /**
+     * Approximate memory used by one decoded Sector, in bytes.
+     * 
+     * <p>Each Tile takes 10 bytes across the Sector's attribute arrays.
+     */
+    public static final int SECTOR_SIZE = Sector.NUM_TILES * Sector.TILE_SIZE;
+
+    /**
+     * Cached Sectors, from least- to most-recently used.
+     */
+    private LinkedHashMap<String, Sector> sectors =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum memory that may be used by cached Sectors, in bytes.
+     */
+    private long memoryBudget;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    public SectorCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Gets a copy of the cached Sector with the given key.
+     * 
+     * @param key
+     * @return Copy of the Sector, or null if it is not cached.
+     */
+    public synchronized Sector get(String key) {
+        Sector sector = sectors.get(key);
+        if (sector == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return sector.copy();
+    }
+
+    /**
+     * Adds a Sector to the cache, evicting the least-recently used Sectors if
+     * the memory budget is exceeded.
+     * 
+     * <p>The cache takes ownership of the given Sector, so it must not be
+     * modified afterwards.
+     * 
+     * @param key
+     * @param sector
+     */
+    public synchronized void put(String key, Sector sector) {
+        sectors.put(key, sector);
+        evict();
+    }
+
+    /**
+     * Removes the least-recently used Sectors until the cache fits within its
+     * memory budget.
+     */
+    private void evict() {
+        Iterator<Sector> it = sectors.values().iterator();
+        while (getMemoryUsage() > memoryBudget && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all cached Sectors.
+     */
+    public synchronized void clear() {
+        sectors.clear();
+    }
+
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized long getMemoryUsage() {
+        return (long) sectors.size() * SECTOR_SIZE;
+    }
+
+    public synchronized int size() {
+        return sectors.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SectorCache [sectors=" + sectors.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions + "]";
+    }
+
+}
@@ -0,0 +1,358 @@
+package client.res;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import client.model.Sector;
+
+/**
+ * Compact summary of every tile in the world, produced by
+ * {@link WorldAtlasPacker}.
+ * 
+ * <p>This allows the ground beyond the loaded window to be queried (e.g. for
+ * long-range pathing or a minimap) without loading any Sectors. The file is
+ * memory-mapped once, and any tile can be looked up in constant time.
+ * 
+ * <p>Each tile is stored in 16 bits: its collision flags, its index into a
+ * palette of ground overlays, and its ground elevation. The palette holds the
+ * ID, type and colour of each overlay in use, so that the atlas can be used
+ * without any TileDefs.
+ * 
+ * <p>The file begins with a fixed-size header (magic number, version, the
+ * range of layers and Sector co-ordinates covered, and the number of tile
+ * blocks), followed by the palette, followed by a table holding the block of
+ * every Sector within that range (or -1 if it is absent), followed by the
+ * blocks themselves. Sectors with identical tiles share a block, which keeps
+ * the many empty Sectors of the upper layers from taking up any space.
+ * 
+ * <p>This class is thread-safe.
+ * 
+ * @author Dan Bryce
+ */
+public class WorldAtlas {
+
+    /**
+     * Name of the atlas within the data directory.
+     */
+    public static final String FILENAME = "Atlas.rscd";
+
+    /**
+     * Magic number at the start of the atlas ("ATLS").
+     */
+    public static final int MAGIC = 0x41544c53;
+
+    /**
+     * Version of the atlas format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Size of the header, in bytes.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Maximum number of distinct ground overlays.
+     * 
+     * <p>Entry 0 is always the absence of an overlay.
+     */
+    public static final int PALETTE_SIZE = 32;
+
+    /**
+     * Size of each palette entry, in bytes.
+     */
+    public static final int PALETTE_ENTRY_SIZE = 8;
+
+    /**
+     * Size of each tile, in bytes.
+     */
+    public static final int TILE_SIZE = 2;
+
+    /**
+     * Size of each block of tiles, in bytes.
+     */
+    public static final int BLOCK_SIZE = Sector.NUM_TILES * TILE_SIZE;
+
+    /*
+     * Layout of each tile.
+     */
+    static final int COLLISION_MASK    = 0xf;
+    static final int OVERLAY_SHIFT     = 4;
+    static final int OVERLAY_MASK      = 0x1f;
+    static final int ELEVATION_SHIFT   = 9;
+    static final int ELEVATION_MASK    = 0x7f;
+
+    /**
+     * Number of low bits dropped from each elevation.
+     * 
+     * <p>The landscape only uses even elevations, so nothing is lost.
+     */
+    static final int ELEVATION_QUANTISATION = 1;
+
+    /**
+     * Contents of the atlas.
+     */
+    private MappedByteBuffer data;
+
+    /**
+     * Number of layers covered by the atlas.
+     */
+    private int numLayers;
+
+    /**
+     * Range of Sector co-ordinates covered by the atlas.
+     */
+    private int minSectorX;
+    private int minSectorZ;
+    private int sectorsX;
+    private int sectorsZ;
+
+    /**
+     * Position of the first block within the atlas.
+     */
+    private int blocksOffset;
+
+    /**
+     * Ground overlay, type and colour of each palette entry.
+     */
+    private int[] overlays = new int[PALETTE_SIZE];
+    private int[] tileTypes = new int[PALETTE_SIZE];
+    private int[] overlayColours = new int[PALETTE_SIZE];
+
+    /**
+     * Maps the given atlas into memory.
+     * 
+     * @param file
+     * @throws IOException if the atlas cannot be read, or is out of date.
+     */
+    public WorldAtlas(File file) throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("Not a world atlas: " + file);
+        }
+
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("World atlas is out of date: " + file +
+                    " (version " + version + ", expected " + VERSION + ")");
+        }
+
+        numLayers = data.getInt(8);
+        minSectorX = data.getInt(12);
+        minSectorZ = data.getInt(16);
+        sectorsX = data.getInt(20);
+        sectorsZ = data.getInt(24);
+        blocksOffset = getTableOffset(numLayers, 0, 0, sectorsX, sectorsZ);
+
+        int numBlocks = data.getInt(28);
+        if (data.capacity() < blocksOffset + (long) numBlocks * BLOCK_SIZE) {
+            throw new IOException("World atlas is truncated: " + file);
+        }
+
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            int offset = getPaletteOffset(i);
+            overlays[i] = data.get(offset) & 0xff;
+            tileTypes[i] = data.get(offset + 1) & 0xff;
+            overlayColours[i] = data.getInt(offset + 4);
+        }
+    }
+
+    /**
+     * Gets the ground elevation of the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Elevation, in the same units as
+     * {@link Sector#getGroundElevation}.
+     */
+    public int getGroundElevation(int tileX, int tileZ, int layer) {
+        int tile = getTile(tileX, tileZ, layer);
+        return ((tile >> ELEVATION_SHIFT) & ELEVATION_MASK)
+                << ELEVATION_QUANTISATION;
+    }
+
+    /**
+     * Gets the collision flags of the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Flags defined by {@link client.world.Collision}.
+     */
+    public int getCollision(int tileX, int tileZ, int layer) {
+        return getTile(tileX, tileZ, layer) & COLLISION_MASK;
+    }
+
+    /**
+     * Gets the ground overlay of the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Overlay ID, plus one; 0 means no overlay.
+     */
+    public int getGroundOverlay(int tileX, int tileZ, int layer) {
+        return overlays[getPaletteIndex(tileX, tileZ, layer)];
+    }
+
+    /**
+     * Gets the type of the given tile's ground overlay.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Type, as given by {@link
+     * client.entityhandling.defs.TileDef#getType}, or 0 if the tile has no
+     * overlay.
+     */
+    public int getTileType(int tileX, int tileZ, int layer) {
+        return tileTypes[getPaletteIndex(tileX, tileZ, layer)];
+    }
+
+    /**
+     * Gets the colour of the given tile's ground overlay.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Colour, as given by {@link
+     * client.entityhandling.defs.TileDef#getColour}, or 0 if the tile has no
+     * overlay.
+     */
+    public int getOverlayColour(int tileX, int tileZ, int layer) {
+        return overlayColours[getPaletteIndex(tileX, tileZ, layer)];
+    }
+
+    /**
+     * Determines if the atlas has any data for the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return
+     */
+    public boolean containsTile(int tileX, int tileZ, int layer) {
+        return getBlockOffset(tileX, tileZ, layer) != -1;
+    }
+
+    private int getPaletteIndex(int tileX, int tileZ, int layer) {
+        return (getTile(tileX, tileZ, layer) >> OVERLAY_SHIFT) & OVERLAY_MASK;
+    }
+
+    /**
+     * Gets the packed data for the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Packed tile, or 0 if the atlas has no data for the tile.
+     */
+    private int getTile(int tileX, int tileZ, int layer) {
+
+        int offset = getBlockOffset(tileX, tileZ, layer);
+        if (offset == -1) {
+            return 0;
+        }
+
+        int x = Math.floorMod(tileX, Sector.WIDTH);
+        int z = Math.floorMod(tileZ, Sector.DEPTH);
+        return data.getShort(offset + getTileIndex(x, z) * TILE_SIZE) & 0xffff;
+    }
+
+    /**
+     * Gets the position of the block holding the given tile.
+     * 
+     * @param tileX Absolute tile co-ordinate.
+     * @param tileZ Absolute tile co-ordinate.
+     * @param layer
+     * @return Offset of the block within the atlas, or -1 if the tile's
+     * Sector is absent.
+     */
+    private int getBlockOffset(int tileX, int tileZ, int layer) {
+
+        int x = Math.floorDiv(tileX, Sector.WIDTH) - minSectorX;
+        int z = Math.floorDiv(tileZ, Sector.DEPTH) - minSectorZ;
+
+        if (layer < 0 || layer >= numLayers ||
+                x < 0 || x >= sectorsX || z < 0 || z >= sectorsZ) {
+            return -1;
+        }
+
+        int block = data.getInt(getTableOffset(
+                layer, x, z, sectorsX, sectorsZ));
+        if (block == -1) {
+            return -1;
+        }
+
+        return blocksOffset + block * BLOCK_SIZE;
+    }
+
+    /**
+     * Gets the position of a palette entry.
+     * 
+     * @param i
+     * @return
+     */
+    static int getPaletteOffset(int i) {
+        return HEADER_SIZE + i * PALETTE_ENTRY_SIZE;
+    }
+
+    /**
+     * Gets the position of a Sector's entry in the block table.
+     * 
+     * @param layer
+     * @param x Sector x co-ordinate, relative to the first in the atlas.
+     * @param z Sector z co-ordinate, relative to the first in the atlas.
+     * @param sectorsX
+     * @param sectorsZ
+     * @return
+     */
+    static int getTableOffset(int layer, int x, int z,
+            int sectorsX, int sectorsZ) {
+        return getPaletteOffset(PALETTE_SIZE) +
+                ((layer * sectorsZ + z) * sectorsX + x) * 4;
+    }
+
+    /**
+     * Gets the index of a tile within its block.
+     * 
+     * <p>This matches the order of tiles within a Sector.
+     * 
+     * @param x Tile co-ordinate relative to the Sector.
+     * @param z Tile co-ordinate relative to the Sector.
+     * @return
+     */
+    static int getTileIndex(int x, int z) {
+        return x * Sector.DEPTH + z;
+    }
+
+    public int getNumLayers() {
+        return numLayers;
+    }
+
+    public int getMinSectorX() {
+        return minSectorX;
+    }
+
+    public int getMinSectorZ() {
+        return minSectorZ;
+    }
+
+    public int getSectorsX() {
+        return sectorsX;
+    }
+
+    public int getSectorsZ() {
+        return sectorsZ;
+    }
+
+}
@@ -0,0 +1,220 @@
+package client.res;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import client.entityhandling.defs.DoorDef;
+import client.entityhandling.defs.TileDef;
+import client.model.Sector;
+
+/**
+ * Build-time tool that summarises the landscape archive into a
+ * {@link WorldAtlas}.
+ * 
+ * <p>Usage: <code>WorldAtlasPacker [input file] [output file]</code>, run
+ * from the directory containing <code>res/</code>. Both files are in the data
+ * directory by default.
+ * 
+ * @author Dan Bryce
+ */
+public class WorldAtlasPacker {
+
+    private static final String LANDSCAPE_FILENAME = "Landscape.rscd";
+
+    /**
+     * Pattern of the entry names in the landscape archive.
+     */
+    private static final Pattern SECTOR_NAME_PATTERN =
+            Pattern.compile("h(\\d+)x(\\d+)y(\\d+)");
+
+    public static void main(String[] args) throws IOException {
+
+        File input = new File(args.length > 0 ?
+                args[0] : Resources.DATA_DIR + LANDSCAPE_FILENAME);
+        File output = new File(args.length > 1 ?
+                args[1] : Resources.DATA_DIR + WorldAtlas.FILENAME);
+
+        // Needed to work out the collision flags and overlays
+        Resources.tiles = (TileDef[]) Resources.loadData("Tiles.rscd");
+        Resources.doors = (DoorDef[]) Resources.loadData("Doors.rscd");
+
+        try (ZipFile archive = new ZipFile(input)) {
+            Resources.tileArchive = archive;
+            int numBlocks = pack(archive, output);
+            System.out.println("Packed " + numBlocks + " distinct sectors to " +
+                    output + " (" + output.length() + " bytes)");
+        }
+    }
+
+    /**
+     * Writes every Sector in the given archive to an atlas.
+     * 
+     * @param archive
+     * @param output
+     * @return Number of distinct blocks written.
+     * @throws IOException
+     */
+    private static int pack(ZipFile archive, File output) throws IOException {
+
+        // Find the range covered by the archive
+        List<int[]> sectors = new ArrayList<>();
+        int numLayers = 0;
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            Matcher matcher = SECTOR_NAME_PATTERN.matcher(
+                    entries.nextElement().getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            int layer = Integer.parseInt(matcher.group(1));
+            int sectorX = Integer.parseInt(matcher.group(2));
+            int sectorZ = Integer.parseInt(matcher.group(3));
+            sectors.add(new int[] { sectorX, sectorZ, layer });
+
+            numLayers = Math.max(numLayers, layer + 1);
+            minX = Math.min(minX, sectorX);
+            minZ = Math.min(minZ, sectorZ);
+            maxX = Math.max(maxX, sectorX);
+            maxZ = Math.max(maxZ, sectorZ);
+        }
+
+        if (sectors.isEmpty()) {
+            throw new IOException("No sectors found in " + archive.getName());
+        }
+
+        int sectorsX = maxX - minX + 1;
+        int sectorsZ = maxZ - minZ + 1;
+        int blocksOffset = WorldAtlas.getTableOffset(
+                numLayers, 0, 0, sectorsX, sectorsZ);
+
+        int[] table = new int[numLayers * sectorsZ * sectorsX];
+        Arrays.fill(table, -1);
+
+        // Palette entry 0 is always the absence of an overlay
+        List<Integer> palette = new ArrayList<>();
+        palette.add(0);
+
+        // Identical Sectors share a block
+        Map<ByteBuffer, Integer> blockIds = new HashMap<>();
+        List<ByteBuffer> blocks = new ArrayList<>();
+
+        for (int[] sector : sectors) {
+            ByteBuffer block = packSector(
+                    Resources.loadSector(sector[0], sector[1], sector[2]),
+                    palette);
+
+            Integer blockId = blockIds.get(block);
+            if (blockId == null) {
+                blockId = blocks.size();
+                blockIds.put(block, blockId);
+                blocks.add(block);
+            }
+
+            int x = sector[0] - minX;
+            int z = sector[1] - minZ;
+            table[(sector[2] * sectorsZ + z) * sectorsX + x] = blockId;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(blocksOffset);
+        header.putInt(WorldAtlas.MAGIC);
+        header.putInt(WorldAtlas.VERSION);
+        header.putInt(numLayers);
+        header.putInt(minX);
+        header.putInt(minZ);
+        header.putInt(sectorsX);
+        header.putInt(sectorsZ);
+        header.putInt(blocks.size());
+
+        for (int i = 0; i < WorldAtlas.PALETTE_SIZE; i++) {
+            int overlay = i < palette.size() ? palette.get(i) : 0;
+            TileDef tileDef = Resources.getTileDef(overlay - 1);
+            header.put((byte) overlay);
+            header.put((byte) (tileDef == null ? 0 : tileDef.getType()));
+            header.putShort((short) 0);
+            header.putInt(tileDef == null ? 0 : tileDef.getColour());
+        }
+
+        for (int block : table) {
+            header.putInt(block);
+        }
+        header.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw");
+                FileChannel channel = raf.getChannel()) {
+
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (ByteBuffer block : blocks) {
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+        }
+
+        return blocks.size();
+    }
+
+    /**
+     * Packs the tiles of a Sector into a block, adding any new overlays to
+     * the palette.
+     * 
+     * @param sector
+     * @param palette
+     * @return
+     * @throws IOException if the palette is full.
+     */
+    private static ByteBuffer packSector(Sector sector, List<Integer> palette)
+            throws IOException {
+
+        ByteBuffer block = ByteBuffer.allocate(WorldAtlas.BLOCK_SIZE);
+
+        for (int x = 0; x < Sector.WIDTH; x++) {
+            for (int z = 0; z < Sector.DEPTH; z++) {
+
+                int overlay = sector.getGroundOverlay(x, z) & 0xff;
+                int paletteIndex = palette.indexOf(overlay);
+                if (paletteIndex == -1) {
+                    if (palette.size() == WorldAtlas.PALETTE_SIZE) {
+                        throw new IOException("Too many ground overlays");
+                    }
+                    paletteIndex = palette.size();
+                    palette.add(overlay);
+                }
+
+                int elevation = (sector.getGroundElevation(x, z) & 0xff)
+                        >> WorldAtlas.ELEVATION_QUANTISATION;
+
+                int tile = sector.getCollision(x, z) & WorldAtlas.COLLISION_MASK;
+                tile |= paletteIndex << WorldAtlas.OVERLAY_SHIFT;
+                tile |= elevation << WorldAtlas.ELEVATION_SHIFT;
+
+                int i = WorldAtlas.getTileIndex(x, z);
+                block.putShort(i * WorldAtlas.TILE_SIZE, (short) tile);
+            }
+        }
+
+        return block;
+    }
+
+}
@@ -2,6 +2,10 @@ package client.scene;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import client.util.DataUtils;
 
@@ -12,6 +16,11 @@ import client.util.DataUtils;
  */
 public class Model {
 
+    /**
+     * Approximate size of the header of each array, in bytes.
+     */
+    private static final int ARRAY_HEADER_SIZE = 16;
+
     public int vertexIndex;
     public int projectVertexX[];
     public int projectVertexY[];
@@ -94,6 +103,16 @@ public class Model {
     public int lightAmbience;
     private int indexInByteArray;
 
+    /**
+     * Index of this Model within the Scene it has been added to, or -1.
+     */
+    public int sceneSlot = -1;
+
+    /**
+     * Whether this Model came from the ModelPool, and can be released into it.
+     */
+    boolean pooled;
+
     static {
         trigValues1 = new int[512];
         trigValues2 = new int[2048];
@@ -505,7 +524,142 @@ public class Model {
         state = 0;
     }
 
+    /**
+     * Prepares this Model to be filled again, as if it had just been created
+     * by {@link ModelPool#obtain}.
+     * 
+     * <p>Arrays are only replaced if they are too small.
+     * 
+     * @param maxVertices
+     * @param maxFaces
+     * @param unpickable
+     */
+    void reinitialise(int maxVertices, int maxFaces, boolean unpickable) {
+        
+        transformState = 1;
+        visible = true;
+        textureTranslucent = false;
+        transparent = false;
+        entityId = -1;
+        anInt245 = 0;
+        anInt270 = 0xbc614e;
+        anInt302 = 0xbc614e;
+        distX = 180;
+        distY = 155;
+        distZ = 95;
+        distance = 256;
+        anInt307 = 512;
+        lightAmbience = 32;
+        this.unpickable = unpickable;
+        pooled = true;
+        
+        if (vertexX.length < maxVertices) {
+            vertexX = xPosition = new int[maxVertices];
+            vertexY = yPosition = new int[maxVertices];
+            vertexZ = zPosition = new int[maxVertices];
+            vertexIntensity = new int[maxVertices];
+            vertexAmbience = new byte[maxVertices];
+        }
+        
+        if (faceNumVertices.length < maxFaces) {
+            faceNumVertices = new int[maxFaces];
+            // Keep the old vertex arrays, which may be refilled
+            faceVertices = Arrays.copyOf(faceVertices, maxFaces);
+            faceFillFront = new int[maxFaces];
+            faceFillBack = new int[maxFaces];
+            faceIntensity = new int[maxFaces];
+            normalScale = new int[maxFaces];
+            normalMagnitude = new int[maxFaces];
+        }
+        
+        if (unpickable) {
+            faceTag = null;
+        } else if (faceTag == null || faceTag.length < faceNumVertices.length) {
+            faceTag = new int[faceNumVertices.length];
+        }
+        
+        numFaces = 0;
+        vertexIndex = 0;
+        this.maxVertices = vertexX.length;
+        this.count2 = faceNumVertices.length;
+        translateX = translateY = translateZ = 0;
+        rotX = rotY = rotZ = 0;
+        scaleX = scaleY = scaleZ = 256;
+        initially256_1 = initially256_2 = initially256_3 = initially256_4 = initially256_5 = initially256_6 = 256;
+        state = 0;
+    }
+
+    int getVertexCapacity() {
+        return vertexX.length;
+    }
+
+    int getFaceCapacity() {
+        return faceNumVertices.length;
+    }
+
+    /**
+     * Estimates the memory used by this model's arrays.
+     * 
+     * @return Approximate size, in bytes.
+     */
+    public int getMemoryUsage() {
+
+        int size = sizeOf(vertexX) + sizeOf(vertexY) + sizeOf(vertexZ) +
+                sizeOf(vertexIntensity) +
+                sizeOf(projectVertexX) + sizeOf(projectVertexY) +
+                sizeOf(projectVertexZ) +
+                sizeOf(vertexViewX) + sizeOf(vertexViewY) +
+                sizeOf(faceNumVertices) + sizeOf(faceFillFront) +
+                sizeOf(faceFillBack) + sizeOf(faceIntensity) +
+                sizeOf(normalScale) + sizeOf(normalMagnitude) +
+                sizeOf(faceTag) +
+                sizeOf(distXRatio) + sizeOf(distYRatio) + sizeOf(distZRatio) +
+                sizeOf(anIntArray280) + sizeOf(anIntArray281) +
+                sizeOf(anIntArray282) + sizeOf(anIntArray283) +
+                sizeOf(anIntArray284) + sizeOf(anIntArray285);
+
+        if (vertexAmbience != null) {
+            size += ARRAY_HEADER_SIZE + vertexAmbience.length;
+        }
+
+        if (xPosition != vertexX) {
+            size += sizeOf(xPosition) + sizeOf(yPosition) + sizeOf(zPosition);
+        }
+
+        if (faceVertices != null) {
+            size += ARRAY_HEADER_SIZE + faceVertices.length * 4;
+            for (int[] vertices : faceVertices) {
+                size += sizeOf(vertices);
+            }
+        }
+
+        return size;
+    }
+
+    private static int sizeOf(int[] array) {
+        return array == null ? 0 : ARRAY_HEADER_SIZE + array.length * 4;
+    }
+
+    /**
+     * Gets an array for the vertices of the given face, reusing the face's
+     * current array if it is the right size.
+     * 
+     * @param face
+     * @param numVertices
+     * @return
+     */
+    private int[] getFaceVertexArray(int face, int numVertices) {
+        int[] vertices = faceVertices[face];
+        if (vertices == null || vertices.length != numVertices) {
+            vertices = new int[numVertices];
+        }
+        return vertices;
+    }
+
     public void resetSomeArrays() {
+        if (projectVertexX != null && projectVertexX.length >= vertexIndex) {
+            return;
+        }
         projectVertexX = new int[vertexIndex];
         projectVertexY = new int[vertexIndex];
         projectVertexZ = new int[vertexIndex];
@@ -659,76 +813,288 @@ public class Model {
         return numFaces++;
     }
 
-    public Model[] createModelArray(int i, int j, int k, int l, int i1, int count, int k1, boolean flag) {
+    /**
+     * Splits this Model into a grid of smaller Models.
+     * 
+     * <p>Each face is assigned to a chunk according to the average position
+     * of its vertices. Faces and vertices are first counted per chunk so that
+     * every chunk can be allocated at its exact size, and then each chunk is
+     * filled by its own task. Our vertices are already unique, so they are
+     * remapped by index rather than searched for again.
+     * 
+     * <p>Faces lying outside the grid are discarded.
+     * 
+     * @param startX Position of the first chunk, in world units.
+     * @param startZ Position of the first chunk, in world units.
+     * @param chunkWidth Width of each chunk, in world units.
+     * @param chunkDepth Depth of each chunk, in world units.
+     * @param chunksX Number of chunks in the x-axis.
+     * @param count Total number of chunks.
+     * @param unpickable
+     * @return
+     */
+    public Model[] createModelArray(int startX, int startZ, int chunkWidth, int chunkDepth, int chunksX, int count, boolean unpickable) {
+        return createModelArray(startX, startZ, chunkWidth, chunkDepth, chunksX, count, unpickable, -1);
+    }
+
+    /**
+     * Splits this Model into some of the chunks of a grid of smaller Models.
+     * 
+     * <p>Faces lying outside the given chunks are discarded, and no Models
+     * are created for the other chunks.
+     * 
+     * @param startX Position of the first chunk, in world units.
+     * @param startZ Position of the first chunk, in world units.
+     * @param chunkWidth Width of each chunk, in world units.
+     * @param chunkDepth Depth of each chunk, in world units.
+     * @param chunksX Number of chunks in the x-axis.
+     * @param count Total number of chunks.
+     * @param unpickable
+     * @param chunkMask Bitmask with bit <i>n</i> set if chunk <i>n</i> is
+     * wanted, or -1 for every chunk.
+     * @return Models of the wanted chunks; the others are null.
+     */
+    public Model[] createModelArray(int startX, int startZ, int chunkWidth, int chunkDepth, int chunksX, int count, boolean unpickable, int chunkMask) {
         resetTransformation();
-        int ai[] = new int[count];
-        int ai1[] = new int[count];
-        for (int l1 = 0; l1 < count; l1++) {
-            ai[l1] = 0;
-            ai1[l1] = 0;
-        }
-
-        for (int i2 = 0; i2 < numFaces; i2++) {
-            int j2 = 0;
-            int k2 = 0;
-            int i3 = faceNumVertices[i2];
-            int ai2[] = faceVertices[i2];
-            for (int i4 = 0; i4 < i3; i4++) {
-                j2 += vertexX[ai2[i4]];
-                k2 += vertexZ[ai2[i4]];
+        
+        // Work out which chunk each face belongs to
+        int faceChunk[] = new int[numFaces];
+        int chunkFaceStart[] = new int[count + 1];
+        int numFaceVertices = 0;
+        for (int face = 0; face < numFaces; face++) {
+            int sumX = 0;
+            int sumZ = 0;
+            int numVertices = faceNumVertices[face];
+            int vertices[] = faceVertices[face];
+            for (int i = 0; i < numVertices; i++) {
+                sumX += vertexX[vertices[i]];
+                sumZ += vertexZ[vertices[i]];
             }
-
-            int k4 = j2 / (i3 * k) + (k2 / (i3 * l)) * i1;
-            ai[k4] += i3;
-            ai1[k4]++;
-        }
-
-        Model models[] = new Model[count];
-        for (int l2 = 0; l2 < count; l2++) {
-            if (ai[l2] > k1) {
-                ai[l2] = k1;
+            
+            int chunkX = Math.floorDiv(sumX / numVertices - startX, chunkWidth);
+            int chunkZ = Math.floorDiv(sumZ / numVertices - startZ, chunkDepth);
+            if (chunkX < 0 || chunkX >= chunksX ||
+                    chunkZ < 0 || chunkZ >= count / chunksX) {
+                // Face lies outside the grid
+                faceChunk[face] = -1;
+                continue;
             }
-            models[l2] = new Model(ai[l2], ai1[l2], true, true, true, flag, true);
-            models[l2].anInt307 = anInt307;
-            models[l2].lightAmbience = lightAmbience;
-        }
-
-        for (int j3 = 0; j3 < numFaces; j3++) {
-            int k3 = 0;
-            int j4 = 0;
-            int l4 = faceNumVertices[j3];
-            int ai3[] = faceVertices[j3];
-            for (int i5 = 0; i5 < l4; i5++) {
-                k3 += vertexX[ai3[i5]];
-                j4 += vertexZ[ai3[i5]];
+            
+            int chunk = chunkX + chunkZ * chunksX;
+            if (chunkMask != -1 && (chunkMask & (1 << chunk)) == 0) {
+                // Chunk is not wanted
+                faceChunk[face] = -1;
+                continue;
             }
-
-            int j5 = k3 / (l4 * k) + (j4 / (l4 * l)) * i1;
-            copySomeDataIntoTheNextIndex(models[j5], ai3, l4, j3);
+            
+            faceChunk[face] = chunk;
+            chunkFaceStart[chunk + 1]++;
+            numFaceVertices += numVertices;
         }
-
-        for (int l3 = 0; l3 < count; l3++) {
-            models[l3].resetSomeArrays();
+        
+        // Group the faces by chunk, preserving their order
+        for (int chunk = 0; chunk < count; chunk++) {
+            chunkFaceStart[chunk + 1] += chunkFaceStart[chunk];
+        }
+        int chunkFaces[] = new int[numFaces];
+        int nextFace[] = Arrays.copyOf(chunkFaceStart, count);
+        for (int face = 0; face < numFaces; face++) {
+            if (faceChunk[face] != -1) {
+                chunkFaces[nextFace[faceChunk[face]]++] = face;
+            }
+        }
+        
+        // Number the vertices used by each chunk, in order of first use
+        int chunkVertexStart[] = new int[count + 1];
+        int chunkVertices[] = new int[numFaceVertices];
+        int chunkFaceVertexStart[] = new int[count];
+        int chunkFaceVertices[] = new int[numFaceVertices];
+        int vertexChunk[] = new int[vertexIndex];
+        int vertexInChunk[] = new int[vertexIndex];
+        Arrays.fill(vertexChunk, -1);
+        int numChunkVertices = 0;
+        int numChunkFaceVertices = 0;
+        for (int chunk = 0; chunk < count; chunk++) {
+            chunkVertexStart[chunk] = numChunkVertices;
+            chunkFaceVertexStart[chunk] = numChunkFaceVertices;
+            for (int i = chunkFaceStart[chunk]; i < chunkFaceStart[chunk + 1]; i++) {
+                int face = chunkFaces[i];
+                int vertices[] = faceVertices[face];
+                for (int j = 0; j < faceNumVertices[face]; j++) {
+                    int vertex = vertices[j];
+                    if (vertexChunk[vertex] != chunk) {
+                        vertexChunk[vertex] = chunk;
+                        vertexInChunk[vertex] =
+                                numChunkVertices - chunkVertexStart[chunk];
+                        chunkVertices[numChunkVertices++] = vertex;
+                    }
+                    chunkFaceVertices[numChunkFaceVertices++] = vertexInChunk[vertex];
+                }
+            }
         }
+        chunkVertexStart[count] = numChunkVertices;
+        
+        // Fill each chunk independently
+        Model models[] = new Model[count];
+        IntStream.range(0, count).parallel().filter(chunk ->
+                chunkMask == -1 || (chunkMask & (1 << chunk)) != 0).forEach(chunk -> {
+            
+            int firstVertex = chunkVertexStart[chunk];
+            int numVertices = chunkVertexStart[chunk + 1] - firstVertex;
+            int firstFace = chunkFaceStart[chunk];
+            int numChunkFaces = chunkFaceStart[chunk + 1] - firstFace;
+            
+            Model gameModel = ModelPool.obtain(
+                    numVertices, numChunkFaces, unpickable);
+            gameModel.anInt307 = anInt307;
+            gameModel.lightAmbience = lightAmbience;
+            
+            for (int i = 0; i < numVertices; i++) {
+                int vertex = chunkVertices[firstVertex + i];
+                gameModel.vertexX[i] = vertexX[vertex];
+                gameModel.vertexY[i] = vertexY[vertex];
+                gameModel.vertexZ[i] = vertexZ[vertex];
+                gameModel.vertexIntensity[i] = vertexIntensity[vertex];
+                gameModel.vertexAmbience[i] = vertexAmbience[vertex];
+            }
+            gameModel.vertexIndex = numVertices;
+            
+            int faceVertex = chunkFaceVertexStart[chunk];
+            for (int i = 0; i < numChunkFaces; i++) {
+                int face = chunkFaces[firstFace + i];
+                int numFaceVerts = faceNumVertices[face];
+                int vertices[] = gameModel.getFaceVertexArray(i, numFaceVerts);
+                System.arraycopy(chunkFaceVertices, faceVertex, vertices, 0, numFaceVerts);
+                faceVertex += numFaceVerts;
+                copyFaceInto(gameModel, face, vertices);
+            }
+            
+            gameModel.resetSomeArrays();
+            models[chunk] = gameModel;
+        });
 
         return models;
     }
 
-    public void copySomeDataIntoTheNextIndex(Model gameModel, int ai[], int count, int index) {
-        int ai1[] = new int[count];
-        for (int k = 0; k < count; k++) {
-            int l = ai1[k] = gameModel.createVertexWithoutDuplication(vertexX[ai[k]], vertexY[ai[k]], vertexZ[ai[k]]);
-            gameModel.vertexIntensity[l] = vertexIntensity[ai[k]];
-            gameModel.vertexAmbience[l] = vertexAmbience[ai[k]];
+    /**
+     * Writes the geometry and lighting of this Model into a ByteBuffer.
+     * 
+     * <p>Only the state needed by a finished, pre-lit Model (such as the
+     * chunks returned by {@link #createModelArray}) is written.
+     * 
+     * @return
+     */
+    public ByteBuffer pack() {
+        
+        int numFaceVertices = 0;
+        for (int face = 0; face < numFaces; face++) {
+            numFaceVertices += faceNumVertices[face];
         }
+        
+        boolean hasFaceTags = !unpickable && faceTag != null;
+        int numInts = 5 +
+                vertexIndex * 4 +
+                numFaces * (hasFaceTags ? 7 : 6) +
+                numFaceVertices;
+        ByteBuffer out = ByteBuffer.allocate(numInts * 4 + vertexIndex + 1);
+        
+        out.putInt(vertexIndex);
+        out.putInt(numFaces);
+        out.putInt(numFaceVertices);
+        out.putInt(lightAmbience);
+        out.putInt(anInt307);
+        out.put((byte) (hasFaceTags ? 1 : 0));
+        
+        IntBuffer ints = out.asIntBuffer();
+        ints.put(vertexX, 0, vertexIndex);
+        ints.put(vertexY, 0, vertexIndex);
+        ints.put(vertexZ, 0, vertexIndex);
+        ints.put(vertexIntensity, 0, vertexIndex);
+        ints.put(faceNumVertices, 0, numFaces);
+        for (int face = 0; face < numFaces; face++) {
+            ints.put(faceVertices[face], 0, faceNumVertices[face]);
+        }
+        ints.put(faceFillFront, 0, numFaces);
+        ints.put(faceFillBack, 0, numFaces);
+        ints.put(faceIntensity, 0, numFaces);
+        ints.put(normalScale, 0, numFaces);
+        ints.put(normalMagnitude, 0, numFaces);
+        if (hasFaceTags) {
+            ints.put(faceTag, 0, numFaces);
+        }
+        out.position(out.position() + ints.position() * 4);
+        
+        out.put(vertexAmbience, 0, vertexIndex);
+        
+        out.flip();
+        return out;
+    }
 
-        int nextIndex = gameModel.createFace(count, ai1, faceFillFront[index], faceFillBack[index]);
+    /**
+     * Creates a new Model from data written by {@link #pack()}.
+     * 
+     * @param in
+     * @return
+     */
+    public static Model unpack(ByteBuffer in) {
+        
+        int numVertices = in.getInt();
+        int numFaces = in.getInt();
+        in.getInt(); // Total number of face vertices
+        int lightAmbience = in.getInt();
+        int anInt307 = in.getInt();
+        boolean hasFaceTags = in.get() == 1;
+        
+        Model model = ModelPool.obtain(numVertices, numFaces, !hasFaceTags);
+        model.lightAmbience = lightAmbience;
+        model.anInt307 = anInt307;
+        model.vertexIndex = numVertices;
+        model.numFaces = numFaces;
+        
+        // The pooled model's arrays may be larger than needed
+        IntBuffer ints = in.asIntBuffer();
+        ints.get(model.vertexX, 0, numVertices);
+        ints.get(model.vertexY, 0, numVertices);
+        ints.get(model.vertexZ, 0, numVertices);
+        ints.get(model.vertexIntensity, 0, numVertices);
+        ints.get(model.faceNumVertices, 0, numFaces);
+        for (int face = 0; face < numFaces; face++) {
+            int n = model.faceNumVertices[face];
+            model.faceVertices[face] = model.getFaceVertexArray(face, n);
+            ints.get(model.faceVertices[face]);
+        }
+        ints.get(model.faceFillFront, 0, numFaces);
+        ints.get(model.faceFillBack, 0, numFaces);
+        ints.get(model.faceIntensity, 0, numFaces);
+        ints.get(model.normalScale, 0, numFaces);
+        ints.get(model.normalMagnitude, 0, numFaces);
+        if (hasFaceTags) {
+            ints.get(model.faceTag, 0, numFaces);
+        }
+        in.position(in.position() + ints.position() * 4);
+        
+        in.get(model.vertexAmbience, 0, numVertices);
+        
+        model.resetSomeArrays();
+        return model;
+    }
+
+    /**
+     * Adds a copy of one of our faces to the given Model.
+     * 
+     * @param gameModel
+     * @param face
+     * @param vertices Vertex indices within the given Model.
+     */
+    private void copyFaceInto(Model gameModel, int face, int vertices[]) {
+        int nextIndex = gameModel.createFace(faceNumVertices[face], vertices,
+                faceFillFront[face], faceFillBack[face]);
         if (!gameModel.unpickable && !unpickable) {
-            gameModel.faceTag[nextIndex] = faceTag[index];
+            gameModel.faceTag[nextIndex] = faceTag[face];
         }
-        gameModel.faceIntensity[nextIndex] = faceIntensity[index];
-        gameModel.normalScale[nextIndex] = normalScale[index];
-        gameModel.normalMagnitude[nextIndex] = normalMagnitude[index];
+        gameModel.faceIntensity[nextIndex] = faceIntensity[face];
+        gameModel.normalScale[nextIndex] = normalScale[face];
+        gameModel.normalMagnitude[nextIndex] = normalMagnitude[face];
     }
 
     public void recalculateLighting(boolean flag, int i, int j, int distX, int distY, int distZ) {
@@ -1173,6 +1539,29 @@ public class Model {
 
     }
 
+    /**
+     * Applies any pending transformation, bringing the bounds up to date.
+     */
+    void updateBounds() {
+        transform();
+    }
+
+    public int getMinX() {
+        return anInt248;
+    }
+
+    public int getMaxX() {
+        return anInt249;
+    }
+
+    public int getMinZ() {
+        return anInt252;
+    }
+
+    public int getMaxZ() {
+        return anInt253;
+    }
+
     public void resetTransformation() {
         transform();
         for (int i = 0; i < vertexIndex; i++) {
@@ -0,0 +1,164 @@
+package client.scene;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of finished chunk models that are no longer in use.
+ * 
+ * <p>Loading a Sector creates hundreds of chunk models, each with a dozen or
+ * more arrays. Rather than leaving the models of Sectors that are thrown away
+ * to the garbage collector, they are returned here, and their arrays are
+ * filled again by the next Sector to be built.
+ * 
+ * <p>Released models are grouped by size class: the power of two at or below
+ * their vertex and face capacities. A request is served from the class at or
+ * above its own size, so any model found there is large enough, and finding
+ * one takes constant time.
+ * 
+ * <p>Only models obtained from this pool may be released into it, and a
+ * model must not be used again once it has been released.
+ * 
+ * <p>This class is thread-safe, and does not lock, since chunk models are
+ * filled in parallel and Sectors may be built in the background while others
+ * are released on the game thread.
+ * 
+ * @author Dan Bryce
+ */
+public class ModelPool {
+
+    /**
+     * Maximum number of models to keep.
+     * 
+     * <p>This is enough for every model of several Sectors.
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * Number of size classes in each dimension.
+     * 
+     * <p>Class 0 holds empty models; class n holds models with a capacity of
+     * at least 2^(n-1).
+     */
+    private static final int NUM_CLASSES = 33;
+
+    /**
+     * Models waiting to be reused, indexed by
+     * <code>vertexClass * NUM_CLASSES + faceClass</code>.
+     */
+    private static final Queue<Model>[] models = createQueues();
+
+    private static final AtomicInteger size = new AtomicInteger();
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+
+    private ModelPool() {}
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Queue<Model>[] createQueues() {
+        Queue<Model>[] queues = new Queue[NUM_CLASSES * NUM_CLASSES];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+        return queues;
+    }
+
+    /**
+     * Gets an empty model, ready to be filled like one created by
+     * {@link Model#createModelArray}.
+     * 
+     * @param maxVertices
+     * @param maxFaces
+     * @param unpickable
+     * @return
+     */
+    public static Model obtain(int maxVertices, int maxFaces,
+            boolean unpickable) {
+
+        int vertexClass = getRequiredClass(maxVertices);
+        int faceClass = getRequiredClass(maxFaces);
+        Model model = models[vertexClass * NUM_CLASSES + faceClass].poll();
+
+        if (model == null) {
+            // Fill the whole class, so the model can serve any request in it
+            misses.incrementAndGet();
+            model = new Model(getCapacity(vertexClass), getCapacity(faceClass),
+                    true, true, true, unpickable, true);
+            model.pooled = true;
+            return model;
+        }
+
+        size.decrementAndGet();
+        hits.incrementAndGet();
+        model.reinitialise(maxVertices, maxFaces, unpickable);
+        return model;
+    }
+
+    /**
+     * Returns a model that is no longer in use, so that it can be reused.
+     * 
+     * <p>Models that did not come from this pool are ignored.
+     * 
+     * @param model
+     */
+    public static void release(Model model) {
+
+        if (model == null || !model.pooled) {
+            return;
+        }
+
+        if (size.incrementAndGet() > CAPACITY) {
+            size.decrementAndGet();
+            return;
+        }
+
+        model.pooled = false;
+        int vertexClass = getClass(model.getVertexCapacity());
+        int faceClass = getClass(model.getFaceCapacity());
+        models[vertexClass * NUM_CLASSES + faceClass].add(model);
+    }
+
+    /**
+     * Gets the size class of a model with the given capacity.
+     * 
+     * @param capacity
+     * @return The largest class whose models are no larger than this.
+     */
+    private static int getClass(int capacity) {
+        return capacity == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity);
+    }
+
+    /**
+     * Gets the size class in which to look for a model of the given size.
+     * 
+     * @param n
+     * @return The smallest class whose models are all at least this large.
+     */
+    private static int getRequiredClass(int n) {
+        return n == 0 ? 0 : 33 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /**
+     * Gets the smallest capacity of the models in the given size class.
+     * 
+     * @param sizeClass
+     * @return
+     */
+    private static int getCapacity(int sizeClass) {
+        return sizeClass == 0 ? 0 : 1 << (sizeClass - 1);
+    }
+
+    public static int size() {
+        return size.get();
+    }
+
+    public static int getHits() {
+        return hits.get();
+    }
+
+    public static int getMisses() {
+        return misses.get();
+    }
+
+}
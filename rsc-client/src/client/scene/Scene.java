@@ -1,5 +1,7 @@
 package client.scene;
 
+import java.util.Arrays;
+
 /**
  * A collection of models and sprites along with lighting settings, ready for
  * rendering.
@@ -8,13 +10,93 @@ package client.scene;
  */
 public class Scene {
 
-    private static final int MAX_MODELS = 15000;
+    public static final int MAX_MODELS = 15000;
     private static final int MAX_SPRITES = 1000;
 
+    /**
+     * Size of each cell of the spatial grid, in world units.
+     */
+    public static final int GRID_CELL_SIZE = 1536;
+
+    /**
+     * Number of grid cells in the x-axis.
+     * 
+     * <p>Models outside the grid are placed in the nearest edge cell.
+     */
+    private static final int GRID_WIDTH = 32;
+
+    /**
+     * Number of grid cells in the z-axis.
+     */
+    private static final int GRID_DEPTH = 32;
+
+    /**
+     * Initial capacity of each grid cell.
+     */
+    private static final int INITIAL_CELL_CAPACITY = 16;
+
+    /**
+     * Number of storeys for which separate wall and roof layers exist.
+     */
+    public static final int NUM_STOREYS = 4;
+
+    /*
+     * Render layers.
+     * 
+     * Every Model belongs to exactly one layer, and each layer can be shown
+     * or hidden as a whole.
+     */
+    public static final int LAYER_TERRAIN = 0;
+    private static final int LAYER_WALLS = 1;
+    private static final int LAYER_ROOFS = LAYER_WALLS + NUM_STOREYS;
+    public static final int LAYER_DOORS = LAYER_ROOFS + NUM_STOREYS;
+    public static final int LAYER_OBJECTS = LAYER_DOORS + 1;
+    public static final int LAYER_SPRITES = LAYER_OBJECTS + 1;
+
     private Model spriteFaces;
     private Camera camera;
     private int numModels;
     private Model models[] = new Model[MAX_MODELS];
+
+    /**
+     * Render layer of the Model in each slot.
+     */
+    private int modelLayers[] = new int[MAX_MODELS];
+
+    /**
+     * Whether each Model has been individually hidden, by slot.
+     */
+    private boolean modelHidden[] = new boolean[MAX_MODELS];
+
+    /**
+     * Bitmask of the render layers that should be drawn.
+     */
+    private int enabledLayers = -1;
+
+    /*
+     * World-space bounds of the Model in each slot, on the horizontal plane.
+     */
+    private int modelMinX[] = new int[MAX_MODELS];
+    private int modelMaxX[] = new int[MAX_MODELS];
+    private int modelMinZ[] = new int[MAX_MODELS];
+    private int modelMaxZ[] = new int[MAX_MODELS];
+
+    /**
+     * Models overlapping each cell of the spatial grid.
+     * 
+     * <p>A Model appears in every cell that its bounds overlap.
+     */
+    private Model cellModels[][] = new Model[GRID_WIDTH * GRID_DEPTH][];
+    private int cellSizes[] = new int[GRID_WIDTH * GRID_DEPTH];
+
+    /**
+     * Query in which the Model in each slot was last found.
+     * 
+     * <p>Used to report each Model only once, even if it spans many cells.
+     */
+    private int modelQueryIds[] = new int[MAX_MODELS];
+    private int queryId;
+
     private int numSprites;
     private SpriteEntity spriteEntities[] = new SpriteEntity[MAX_SPRITES];
 
@@ -37,35 +119,351 @@ public class Scene {
         setLight(-50, -10, -50);
     }
 
+    /**
+     * Gets the render layer used for the walls of the given storey.
+     * 
+     * @param storey
+     * @return
+     */
+    public static int getWallLayer(int storey) {
+        return LAYER_WALLS + storey;
+    }
+
+    /**
+     * Gets the render layer used for the roofs of the given storey.
+     * 
+     * @param storey
+     * @return
+     */
+    public static int getRoofLayer(int storey) {
+        return LAYER_ROOFS + storey;
+    }
+
+    /**
+     * Adds a Model to the Scene, in the objects layer.
+     * 
+     * @param gameModel
+     */
     public void addModel(Model gameModel) {
+        addModel(gameModel, LAYER_OBJECTS);
+    }
+
+    /**
+     * Adds a Model to the Scene, in the given render layer.
+     * 
+     * <p>Adding a Model that is already present only updates its position
+     * within the spatial grid, in case it has been moved since.
+     * 
+     * @param gameModel
+     * @param layer
+     */
+    public void addModel(Model gameModel, int layer) {
         if (gameModel == null) {
             System.out.println("WARNING: Tried to add null object");
             return;
         }
+        if (containsModel(gameModel)) {
+            updateModel(gameModel);
+            return;
+        }
         if (numModels < MAX_MODELS) {
             models[numModels] = gameModel;
+            modelLayers[numModels] = layer;
+            modelHidden[numModels] = false;
+            modelQueryIds[numModels] = 0;
+            gameModel.sceneSlot = numModels;
             numModels++;
+            addToGrid(gameModel);
         }
     }
 
+    /**
+     * Removes a Model from the Scene.
+     * 
+     * <p>The last Model is moved into the vacated slot, so the order of the
+     * remaining models is not preserved.
+     * 
+     * @param gameModel
+     */
     public void removeModel(Model gameModel) {
-        for (int i = 0; i < numModels; i++) {
-            if (models[i] == gameModel) {
-                numModels--;
-                for (int j = i; j < numModels; j++) {
-                    models[j] = models[j + 1];
+        if (!containsModel(gameModel)) {
+            return;
+        }
+        
+        removeFromGrid(gameModel);
+        
+        int slot = gameModel.sceneSlot;
+        numModels--;
+        
+        Model lastModel = models[numModels];
+        models[slot] = lastModel;
+        modelLayers[slot] = modelLayers[numModels];
+        modelHidden[slot] = modelHidden[numModels];
+        modelMinX[slot] = modelMinX[numModels];
+        modelMaxX[slot] = modelMaxX[numModels];
+        modelMinZ[slot] = modelMinZ[numModels];
+        modelMaxZ[slot] = modelMaxZ[numModels];
+        modelQueryIds[slot] = modelQueryIds[numModels];
+        lastModel.sceneSlot = slot;
+        
+        models[numModels] = null;
+        gameModel.sceneSlot = -1;
+    }
+
+    /**
+     * Updates the position of a Model within the spatial grid.
+     * 
+     * <p>This must be called whenever a Model that has already been added is
+     * moved.
+     * 
+     * @param gameModel
+     */
+    public void updateModel(Model gameModel) {
+        if (!containsModel(gameModel)) {
+            return;
+        }
+        
+        int slot = gameModel.sceneSlot;
+        gameModel.updateBounds();
+        if (gameModel.getMinX() == modelMinX[slot] &&
+                gameModel.getMaxX() == modelMaxX[slot] &&
+                gameModel.getMinZ() == modelMinZ[slot] &&
+                gameModel.getMaxZ() == modelMaxZ[slot]) {
+            // Not moved
+            return;
+        }
+        
+        removeFromGrid(gameModel);
+        addToGrid(gameModel);
+    }
+
+    /**
+     * Records the bounds of a Model and adds it to every grid cell that they
+     * overlap.
+     * 
+     * @param gameModel
+     */
+    private void addToGrid(Model gameModel) {
+        
+        int slot = gameModel.sceneSlot;
+        gameModel.updateBounds();
+        modelMinX[slot] = gameModel.getMinX();
+        modelMaxX[slot] = gameModel.getMaxX();
+        modelMinZ[slot] = gameModel.getMinZ();
+        modelMaxZ[slot] = gameModel.getMaxZ();
+        
+        if (modelMinX[slot] > modelMaxX[slot] ||
+                modelMinZ[slot] > modelMaxZ[slot]) {
+            // Model has no faces
+            return;
+        }
+        
+        int cellX1 = getCellX(modelMinX[slot]);
+        int cellX2 = getCellX(modelMaxX[slot]);
+        int cellZ1 = getCellZ(modelMinZ[slot]);
+        int cellZ2 = getCellZ(modelMaxZ[slot]);
+        
+        for (int cellX = cellX1; cellX <= cellX2; cellX++) {
+            for (int cellZ = cellZ1; cellZ <= cellZ2; cellZ++) {
+                int cell = cellX * GRID_DEPTH + cellZ;
+                if (cellModels[cell] == null) {
+                    cellModels[cell] = new Model[INITIAL_CELL_CAPACITY];
+                } else if (cellSizes[cell] == cellModels[cell].length) {
+                    cellModels[cell] = Arrays.copyOf(
+                            cellModels[cell], cellSizes[cell] * 2);
                 }
+                cellModels[cell][cellSizes[cell]++] = gameModel;
+            }
+        }
+    }
 
+    /**
+     * Removes a Model from every grid cell that its recorded bounds overlap.
+     * 
+     * @param gameModel
+     */
+    private void removeFromGrid(Model gameModel) {
+        
+        int slot = gameModel.sceneSlot;
+        
+        if (modelMinX[slot] > modelMaxX[slot] ||
+                modelMinZ[slot] > modelMaxZ[slot]) {
+            // Model was never added to the grid
+            return;
+        }
+        
+        int cellX1 = getCellX(modelMinX[slot]);
+        int cellX2 = getCellX(modelMaxX[slot]);
+        int cellZ1 = getCellZ(modelMinZ[slot]);
+        int cellZ2 = getCellZ(modelMaxZ[slot]);
+        
+        for (int cellX = cellX1; cellX <= cellX2; cellX++) {
+            for (int cellZ = cellZ1; cellZ <= cellZ2; cellZ++) {
+                int cell = cellX * GRID_DEPTH + cellZ;
+                Model[] cellContents = cellModels[cell];
+                for (int i = 0; i < cellSizes[cell]; i++) {
+                    if (cellContents[i] == gameModel) {
+                        cellSizes[cell]--;
+                        cellContents[i] = cellContents[cellSizes[cell]];
+                        cellContents[cellSizes[cell]] = null;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getCellX(int x) {
+        int cellX = Math.floorDiv(x, GRID_CELL_SIZE);
+        return Math.max(0, Math.min(GRID_WIDTH - 1, cellX));
+    }
+
+    private static int getCellZ(int z) {
+        int cellZ = Math.floorDiv(z, GRID_CELL_SIZE);
+        return Math.max(0, Math.min(GRID_DEPTH - 1, cellZ));
+    }
+
+    /**
+     * Finds all Models whose bounds overlap the given area.
+     * 
+     * <p>Only the grid cells covering the area are visited.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @param results Array to receive the Models found.
+     * @return Number of Models found, up to the size of the results array.
+     */
+    public int findModelsInArea(int minX, int minZ, int maxX, int maxZ,
+            Model[] results) {
+        
+        int numResults = 0;
+        nextQuery();
+        
+        int cellX1 = getCellX(minX);
+        int cellX2 = getCellX(maxX);
+        int cellZ1 = getCellZ(minZ);
+        int cellZ2 = getCellZ(maxZ);
+        
+        for (int cellX = cellX1; cellX <= cellX2; cellX++) {
+            for (int cellZ = cellZ1; cellZ <= cellZ2; cellZ++) {
+                int cell = cellX * GRID_DEPTH + cellZ;
+                Model[] cellContents = cellModels[cell];
+                for (int i = 0; i < cellSizes[cell]; i++) {
+                    
+                    Model gameModel = cellContents[i];
+                    int slot = gameModel.sceneSlot;
+                    
+                    if (modelQueryIds[slot] == queryId) {
+                        // Already found in another cell
+                        continue;
+                    }
+                    modelQueryIds[slot] = queryId;
+                    
+                    if (modelMaxX[slot] < minX || modelMinX[slot] > maxX ||
+                            modelMaxZ[slot] < minZ || modelMinZ[slot] > maxZ) {
+                        continue;
+                    }
+                    
+                    if (numResults == results.length) {
+                        return numResults;
+                    }
+                    results[numResults++] = gameModel;
+                }
             }
         }
+        
+        return numResults;
+    }
+
+    /**
+     * Starts a new query, so that Models found by previous queries can be
+     * found again.
+     */
+    private void nextQuery() {
+        queryId++;
+        if (queryId == 0) {
+            // Counter has wrapped around
+            Arrays.fill(modelQueryIds, 0);
+            queryId = 1;
+        }
+    }
+
+    /**
+     * Determines whether the given Model has been added to this Scene.
+     * 
+     * @param gameModel
+     * @return
+     */
+    public boolean containsModel(Model gameModel) {
+        if (gameModel == null) {
+            return false;
+        }
+        int slot = gameModel.sceneSlot;
+        return slot >= 0 && slot < numModels && models[slot] == gameModel;
+    }
+
+    /**
+     * Shows or hides all Models in the given render layer.
+     * 
+     * @param layer
+     * @param enabled
+     */
+    public void setLayerEnabled(int layer, boolean enabled) {
+        if (enabled) {
+            enabledLayers |= 1 << layer;
+        } else {
+            enabledLayers &= ~(1 << layer);
+        }
+    }
+
+    public boolean isLayerEnabled(int layer) {
+        return (enabledLayers & (1 << layer)) != 0;
+    }
+
+    /**
+     * Shows or hides a single Model, regardless of its layer.
+     * 
+     * <p>Models that are not in the Scene are ignored.
+     * 
+     * @param gameModel
+     * @param hidden
+     */
+    public void setModelHidden(Model gameModel, boolean hidden) {
+        if (gameModel != null && containsModel(gameModel)) {
+            modelHidden[gameModel.sceneSlot] = hidden;
+        }
+    }
+
+    public boolean isModelHidden(int slot) {
+        return modelHidden[slot];
+    }
+
+    /**
+     * Gets the render layer of the Model in the given slot.
+     * 
+     * @param slot
+     * @return
+     */
+    public int getModelLayer(int slot) {
+        return modelLayers[slot];
     }
 
     public void dispose() {
         clear();
         for (int i = 0; i < numModels; i++) {
+            models[i].sceneSlot = -1;
             models[i] = null;
         }
         numModels = 0;
+        
+        for (int cell = 0; cell < cellModels.length; cell++) {
+            if (cellModels[cell] != null) {
+                Arrays.fill(cellModels[cell], 0, cellSizes[cell], null);
+            }
+            cellSizes[cell] = 0;
+        }
     }
 
     public void clear() {
@@ -6,12 +6,12 @@ import java.awt.event.KeyEvent;
 import client.RsLauncher;
 import client.State;
 import client.model.Mob;
-import client.model.Sector;
 import client.render.GameRenderer;
 import client.render.MousePicker;
 import client.scene.Camera;
 import client.scene.Model;
 import client.scene.Scene;
+import client.world.PathFinder;
 import client.world.World;
 import client.world.WorldLoader;
 
@@ -27,11 +27,52 @@ public class Game extends State {
     public static final int SPAWN_SECTOR_X = 50;
     public static final int SPAWN_SECTOR_Z = 51;
     
+    /**
+     * Absolute tile co-ordinates at which the player spawns.
+     */
+    public static final int SPAWN_TILE_X = 2418;
+    public static final int SPAWN_TILE_Z = 2432;
+    
+    /**
+     * Number of Sectors to load at a time, in the x-axis.
+     * 
+     * <p>Windows of 3 or more Sectors draw their outermost ring using
+     * simplified terrain.
+     */
+    private static final int VIEW_SECTORS_X = World.DEFAULT_SECTORS_X;
+    
+    /**
+     * Number of Sectors to load at a time, in the z-axis.
+     */
+    private static final int VIEW_SECTORS_Z = World.DEFAULT_SECTORS_Z;
+    
+    /**
+     * Distance moved by a walking Mob each tick, in world units.
+     */
+    private static final int WALK_SPEED = 4;
+    
     /**
      * Object used to load the world.
      */
     private WorldLoader worldLoader;
     
+    /**
+     * Object used to find routes for the player.
+     */
+    private PathFinder pathFinder;
+    
+    /**
+     * Whether the player's route was too long to fit in their waypoints, and
+     * must be found again from the last one.
+     */
+    private boolean walkTruncated;
+    
+    /**
+     * Tile the player is walking towards, relative to the World origin.
+     */
+    private int walkTargetX;
+    private int walkTargetZ;
+    
     private World world;
     private Scene scene;
     private Mob player;
@@ -52,16 +93,19 @@ public class Game extends State {
     public Game(RsLauncher launcher) {
         super(launcher);
         
-        // Player position is relative to the World origin
-        player = new Mob();
-        player.x = 66 * World.TILE_WIDTH;
-        player.z = 32 * World.TILE_DEPTH;
-        
         scene = new Scene();
         
-        world = new World(scene);
+        world = new World(scene, VIEW_SECTORS_X, VIEW_SECTORS_Z);
         worldLoader = new WorldLoader(world);
         worldLoader.loadSector(SPAWN_SECTOR_X, SPAWN_SECTOR_Z);
+        pathFinder = new PathFinder(world);
+        
+        // Player position is relative to the World origin
+        player = new Mob();
+        player.x = (SPAWN_TILE_X - World.START_X - world.getOriginX()) *
+                World.TILE_WIDTH;
+        player.z = (SPAWN_TILE_Z - World.START_Z - world.getOriginZ()) *
+                World.TILE_DEPTH;
         
         renderer = new GameRenderer(this);
     }
@@ -72,8 +116,10 @@ public class Game extends State {
         // Key handling
         if (input.wasKeyReleased(KeyEvent.VK_PAGE_UP)) {
             worldLoader.ascend();
+            stopMoving(player);
         } else if (input.wasKeyReleased(KeyEvent.VK_PAGE_DOWN)) {
             worldLoader.descend();
+            stopMoving(player);
         }
 
         // Get mouse-picked models / faces from the rendered scene
@@ -81,12 +127,21 @@ public class Game extends State {
         int mousePickedCount = mousePicker.getMousePickedCount();
         Model mousePickedModels[] = mousePicker.getMousePickedModels();
         int mousePickedFaces[] = mousePicker.getMousePickedFaces();
+        int mousePickedX[] = mousePicker.getMousePickedX();
+        int mousePickedZ[] = mousePicker.getMousePickedZ();
         
         int selectedGroundFaceId = -1;
+        int selectedX = 0;
+        int selectedZ = 0;
 
         for (int i = 0; i < mousePickedCount; i++) {
             int faceId = mousePickedFaces[i];
             Model gameModel = mousePickedModels[i];
+            
+            if (!scene.containsModel(gameModel)) {
+                // Model was removed from the Scene since it was picked
+                continue;
+            }
 
             if (faceId >= 0) {
                 faceId = gameModel.faceTag[faceId] - 200000;
@@ -94,46 +149,171 @@ public class Game extends State {
             
             if (faceId >= 0) {
                 selectedGroundFaceId = faceId;
+                selectedX = mousePickedX[i];
+                selectedZ = mousePickedZ[i];
             }
         }
 
         if (selectedGroundFaceId != -1) {
             int tileX = world.getTileXForFace(selectedGroundFaceId);
             int tileZ = world.getTileZForFace(selectedGroundFaceId);
+            
+            // Find the tile beneath the mouse, if the face covers several
+            int width = World.getTileWidthForFace(selectedGroundFaceId);
+            int depth = World.getTileDepthForFace(selectedGroundFaceId);
+            tileX = Math.max(tileX, Math.min(tileX + width - 1,
+                    Math.floorDiv(selectedX, World.TILE_WIDTH)));
+            tileZ = Math.max(tileZ, Math.min(tileZ + depth - 1,
+                    Math.floorDiv(selectedZ, World.TILE_DEPTH)));
+            
             groundTileSelected(tileX, tileZ);
         }
     }
     
     private void groundTileSelected(int tileX, int tileZ) {
         if (input.wasLeftClickReleased()) {
-            player.x = tileX * World.TILE_WIDTH;
-            player.z = tileZ * World.TILE_DEPTH;
+            walkTo(tileX, tileZ);
+        }
+    }
+    
+    /**
+     * Sets the player walking towards the given tile.
+     * 
+     * <p>If there is no route, the player stays where they are.
+     * 
+     * <p>If the route has more waypoints than the player can hold, they walk
+     * as far as the last one, and the rest of the route is found from there.
+     * 
+     * @param tileX Tile co-ordinate relative to the World origin.
+     * @param tileZ Tile co-ordinate relative to the World origin.
+     */
+    private void walkTo(int tileX, int tileZ) {
+        
+        int numWaypoints = pathFinder.findPath(
+                player.x / World.TILE_WIDTH,
+                player.z / World.TILE_DEPTH,
+                tileX,
+                tileZ,
+                player.waypointsX,
+                player.waypointsZ);
+        
+        if (numWaypoints < 0) {
+            return;
+        }
+        
+        walkTargetX = tileX;
+        walkTargetZ = tileZ;
+        walkTruncated = numWaypoints > 0 &&
+                (player.waypointsX[numWaypoints - 1] != tileX ||
+                player.waypointsZ[numWaypoints - 1] != tileZ);
+        
+        // Waypoints are stored in world units
+        for (int i = 0; i < numWaypoints; i++) {
+            player.waypointsX[i] *= World.TILE_WIDTH;
+            player.waypointsZ[i] *= World.TILE_DEPTH;
+        }
+        
+        player.movingStep = 0;
+        player.waypointCurrent = numWaypoints;
+    }
+    
+    /**
+     * Moves the given Mob towards its next waypoint.
+     * 
+     * @param mob
+     */
+    private void updateMovement(Mob mob) {
+        
+        if (mob.movingStep >= mob.waypointCurrent) {
+            return;
+        }
+        
+        int dx = mob.waypointsX[mob.movingStep] - mob.x;
+        int dz = mob.waypointsZ[mob.movingStep] - mob.z;
+        
+        mob.x += Math.max(-WALK_SPEED, Math.min(WALK_SPEED, dx));
+        mob.z += Math.max(-WALK_SPEED, Math.min(WALK_SPEED, dz));
+        
+        if (mob.x == mob.waypointsX[mob.movingStep] &&
+                mob.z == mob.waypointsZ[mob.movingStep]) {
+            mob.movingStep++;
+        }
+    }
+    
+    private void stopMoving(Mob mob) {
+        mob.movingStep = mob.waypointCurrent;
+        if (mob == player) {
+            walkTruncated = false;
         }
     }
 
     @Override
     public void tick() {
         
+        /*
+         * Swap in Sectors that have finished loading
+         */
+        
+        int prevOriginX = world.getOriginX();
+        int prevOriginZ = world.getOriginZ();
+        
+        if (worldLoader.applyBackgroundLoad()) {
+            // Player position is relative to the World origin
+            int dx = (world.getOriginX() - prevOriginX) * World.TILE_WIDTH;
+            int dz = (world.getOriginZ() - prevOriginZ) * World.TILE_DEPTH;
+            player.x -= dx;
+            player.z -= dz;
+            for (int i = player.movingStep; i < player.waypointCurrent; i++) {
+                player.waypointsX[i] -= dx;
+                player.waypointsZ[i] -= dz;
+            }
+            walkTargetX -= world.getOriginX() - prevOriginX;
+            walkTargetZ -= world.getOriginZ() - prevOriginZ;
+        }
+        
+        /*
+         * Rebuild any models whose tiles have changed
+         */
+        
+        worldLoader.rebuildDirtyChunks();
+        
+        updateMovement(player);
+        
+        if (walkTruncated && player.movingStep >= player.waypointCurrent) {
+            // Reached the end of the part of the route that would fit
+            walkTruncated = false;
+            walkTo(walkTargetX, walkTargetZ);
+        }
+        
+        if (worldLoader.isLoadingInBackground()) {
+            return;
+        }
+        
+        /*
+         * Build the Sectors the player is heading towards
+         */
+        
+        worldLoader.getPrefetcher().update(player);
+        
         /*
          * Load next Sectors
          */
         
-        if (player.x < 16 * World.TILE_WIDTH) {
-            worldLoader.loadSector(world.getSectorX() - 1, world.getSectorZ());
-            player.x += Sector.WIDTH * World.TILE_WIDTH;
+        if (player.x < world.getLoadMinX() * World.TILE_WIDTH) {
+            worldLoader.loadSectorInBackground(
+                    world.getSectorX() - 1, world.getSectorZ());
             
-        } else if (player.x > 80 * World.TILE_WIDTH) {
-            worldLoader.loadSector(world.getSectorX() + 1, world.getSectorZ());
-            player.x -= Sector.WIDTH * World.TILE_WIDTH;
-        }
-
-        if (player.z < 16 * World.TILE_DEPTH) {
-            worldLoader.loadSector(world.getSectorX(), world.getSectorZ() - 1);
-            player.z += Sector.DEPTH * World.TILE_DEPTH;
+        } else if (player.x > world.getLoadMaxX() * World.TILE_WIDTH) {
+            worldLoader.loadSectorInBackground(
+                    world.getSectorX() + 1, world.getSectorZ());
+            
+        } else if (player.z < world.getLoadMinZ() * World.TILE_DEPTH) {
+            worldLoader.loadSectorInBackground(
+                    world.getSectorX(), world.getSectorZ() - 1);
             
-        } else if (player.z > 80 * World.TILE_DEPTH) {
-            worldLoader.loadSector(world.getSectorX(), world.getSectorZ() + 1);
-            player.z -= Sector.DEPTH * World.TILE_DEPTH;
+        } else if (player.z > world.getLoadMaxZ() * World.TILE_DEPTH) {
+            worldLoader.loadSectorInBackground(
+                    world.getSectorX(), world.getSectorZ() + 1);
         }
     }
 
@@ -3,6 +3,7 @@ package client.states;
 import java.awt.Graphics;
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,10 +23,13 @@ import client.entityhandling.defs.SpellDef;
 import client.entityhandling.defs.TextureDef;
 import client.entityhandling.defs.TileDef;
 import client.render.LoadingScreenRenderer;
+import client.res.LandscapePack;
 import client.res.Resources;
 import client.res.Sprite;
 import client.res.Texture;
+import client.res.WorldAtlas;
 import client.util.DataUtils;
+import client.world.MeshArchive;
 
 public class LoadingScreen extends State {
 
@@ -66,6 +70,37 @@ public class LoadingScreen extends State {
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        // Uncompressed landscape data is optional
+        File landscapePackFile = new File(
+                Resources.DATA_DIR + LandscapePack.FILENAME);
+        if (landscapePackFile.exists()) {
+            try {
+                Resources.landscapePack = new LandscapePack(landscapePackFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Pre-built Sectors are optional
+        File meshFile = new File(Resources.DATA_DIR + MeshArchive.FILENAME);
+        if (meshFile.exists()) {
+            try {
+                Resources.meshArchive = new MeshArchive(meshFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // World atlas is optional
+        File atlasFile = new File(Resources.DATA_DIR + WorldAtlas.FILENAME);
+        if (atlasFile.exists()) {
+            try {
+                Resources.worldAtlas = new WorldAtlas(atlasFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
@@ -5,21 +5,32 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class DataUtils {
 
     /**
-     * Returns a ByteBuffer containing all available data from the given
+     * Returns a ByteBuffer containing all remaining data from the given
      * InputStream.
+     * 
+     * <p>The stream is read until it is exhausted, since available() and a
+     * single read() may both fall short of the full contents.
      *
      * @return
      * @throws IOException
      */
     public static final ByteBuffer streamToBuffer(BufferedInputStream in)
             throws IOException {
-        byte[] buffer = new byte[in.available()];
-        in.read(buffer, 0, buffer.length);
-        return ByteBuffer.wrap(buffer);
+        byte[] buffer = new byte[Math.max(in.available(), 8192)];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return ByteBuffer.wrap(buffer, 0, length);
     }
 
     public static int getUnsignedShort(byte abyte0[], int i) {
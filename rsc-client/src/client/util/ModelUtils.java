@@ -3,6 +3,7 @@ package client.util;
 import client.res.Resources;
 import client.scene.Model;
 import client.world.Door;
+import client.world.LoadedSector;
 import client.world.World;
 
 public class ModelUtils {
@@ -12,30 +13,74 @@ public class ModelUtils {
     /**
      * Adds a wall to the given model.
      * 
-     * @param world
+     * @param sector Sector whose terrain should be darkened around the wall.
+     * @param model
+     * @param wallIndex
+     * @param x1 Tile co-ordinate relative to the Sector.
+     * @param z1 Tile co-ordinate relative to the Sector.
+     * @param elevation1
+     * @param x2 Tile co-ordinate relative to the Sector.
+     * @param z2 Tile co-ordinate relative to the Sector.
+     * @param elevation2
+     */
+    public static void createWall(LoadedSector sector, Model model, int wallIndex,
+            int x1, int z1, int elevation1, int x2, int z2, int elevation2) {
+        createWallRun(sector, model, wallIndex,
+                x1, z1, x2 - x1, z2 - z1, elevation1, elevation2 - elevation1, 1);
+    }
+
+    /**
+     * Adds a straight run of identical wall segments to the given model, as
+     * a single face.
+     * 
+     * <p>The elevation must change by the same amount along each segment, so
+     * that the face is flat. Every segment keeps its own vertices along the
+     * top and bottom of the face, and the texture is mapped from the first
+     * segment, so it repeats along the run exactly as it would across
+     * separate faces.
+     * 
+     * <p>All segments share the same faceTag, since it depends only on the
+     * wall's DoorDef.
+     * 
+     * @param sector Sector whose terrain should be darkened around the wall.
      * @param model
      * @param wallIndex
-     * @param x1
-     * @param z1
-     * @param x2
-     * @param z2
+     * @param x Tile co-ordinate of the start of the run, relative to the
+     * Sector.
+     * @param z Tile co-ordinate of the start of the run, relative to the
+     * Sector.
+     * @param dx Offset from the start to the end of each segment.
+     * @param dz Offset from the start to the end of each segment.
+     * @param elevation Elevation at the start of the run.
+     * @param elevationStep Change in elevation along each segment.
+     * @param numSegments
      */
-    public static void createWall(World world, Model model, int wallIndex, int x1, int z1, int x2, int z2) {
-        setAmbientLighting(world, x1, z1, 40);
-        setAmbientLighting(world, x2, z2, 40);
+    public static void createWallRun(LoadedSector sector, Model model,
+            int wallIndex, int x, int z, int dx, int dz,
+            int elevation, int elevationStep, int numSegments) {
+        
+        for (int i = 0; i <= numSegments; i++) {
+            setAmbientLighting(sector, x + i * dx, z + i * dz, 40);
+        }
+        
         int height = Resources.getDoorDef(wallIndex).getHeight();
         int frontTexture = Resources.getDoorDef(wallIndex).getFrontTexture();
         int backTexture = Resources.getDoorDef(wallIndex).getBackTexture();
-        int i2 = x1 * 128;
-        int j2 = z1 * 128;
-        int k2 = x2 * 128;
-        int l2 = z2 * 128;
-        int i3 = model.createVertexWithoutDuplication(i2, -world.getElevation(x1, z1), j2);
-        int j3 = model.createVertexWithoutDuplication(i2, -world.getElevation(x1, z1) - height, j2);
-        int k3 = model.createVertexWithoutDuplication(k2, -world.getElevation(x2, z2) - height, l2);
-        int l3 = model.createVertexWithoutDuplication(k2, -world.getElevation(x2, z2), l2);
         
-        int i4 = model.createFace(4, new int[] { i3, j3, k3, l3 }, frontTexture, backTexture);
+        // Up the start, along the top, then back along the bottom
+        int numVertices = (numSegments + 1) * 2;
+        int[] vertices = new int[numVertices];
+        vertices[0] = createWallVertex(model, x, z, elevation);
+        for (int i = 0; i <= numSegments; i++) {
+            vertices[i + 1] = createWallVertex(model,
+                    x + i * dx, z + i * dz, elevation + i * elevationStep + height);
+        }
+        for (int i = numSegments; i > 0; i--) {
+            vertices[numVertices - i] = createWallVertex(model,
+                    x + i * dx, z + i * dz, elevation + i * elevationStep);
+        }
+        
+        int i4 = model.createFace(numVertices, vertices, frontTexture, backTexture);
         if (Resources.getDoorDef(wallIndex).getUnknown() == 5) {
             model.faceTag[i4] = 30000 + wallIndex;
         } else {
@@ -43,30 +88,37 @@ public class ModelUtils {
         }
     }
 
-    private static void setAmbientLighting(World world, int x, int z, int height) {
-        int modelIndex1 = x / 12;
-        int modelIndex2 = z / 12;
-        int otherModelIndex1 = (x - 1) / 12;
-        int otherModelIndex2 = (z - 1) / 12;
-        setAmbientLighting(world, modelIndex1, modelIndex2, x, z, height);
+    private static int createWallVertex(Model model, int x, int z, int elevation) {
+        return model.createVertexWithoutDuplication(x * 128, -elevation, z * 128);
+    }
+
+    private static void setAmbientLighting(LoadedSector sector, int x, int z, int height) {
+        int modelIndex1 = Math.floorDiv(x, World.CHUNK_WIDTH);
+        int modelIndex2 = Math.floorDiv(z, World.CHUNK_DEPTH);
+        int otherModelIndex1 = Math.floorDiv(x - 1, World.CHUNK_WIDTH);
+        int otherModelIndex2 = Math.floorDiv(z - 1, World.CHUNK_DEPTH);
+        setAmbientLighting(sector, modelIndex1, modelIndex2, x, z, height);
         if (modelIndex1 != otherModelIndex1) {
-            setAmbientLighting(world, otherModelIndex1, modelIndex2, x, z, height);
+            setAmbientLighting(sector, otherModelIndex1, modelIndex2, x, z, height);
         }
         if (modelIndex2 != otherModelIndex2) {
-            setAmbientLighting(world, modelIndex1, otherModelIndex2, x, z, height);
+            setAmbientLighting(sector, modelIndex1, otherModelIndex2, x, z, height);
         }
         if (modelIndex1 != otherModelIndex1 && modelIndex2 != otherModelIndex2) {
-            setAmbientLighting(world, otherModelIndex1, otherModelIndex2, x, z, height);
+            setAmbientLighting(sector, otherModelIndex1, otherModelIndex2, x, z, height);
         }
     }
 
-    private static void setAmbientLighting(World world, int modelIndex1, int modelIndex2, int x, int z, int ambience) {
-        Model gameModel = world.getLandscapeModel(modelIndex1 + modelIndex2 * 8);
-        for (int vertex = 0; vertex < gameModel.vertexIndex; vertex++) {
-            if (gameModel.vertexX[vertex] == x * 128 && gameModel.vertexZ[vertex] == z * 128) {
-                gameModel.setVertexAmbience(vertex, ambience);
-                return;
-            }
+    private static void setAmbientLighting(LoadedSector sector, int modelIndex1, int modelIndex2, int x, int z, int ambience) {
+        if (modelIndex1 < 0 || modelIndex1 >= LoadedSector.NUM_CHUNKS_X ||
+                modelIndex2 < 0 || modelIndex2 >= LoadedSector.NUM_CHUNKS_Z) {
+            // Wall lies beyond the edge of the Sector
+            return;
+        }
+        int chunk = modelIndex1 + modelIndex2 * LoadedSector.NUM_CHUNKS_X;
+        int vertex = sector.getLandscapeVertex(chunk, x, z);
+        if (vertex != -1) {
+            sector.getLandscapeModel(chunk).setVertexAmbience(vertex, ambience);
         }
     }
 
@@ -0,0 +1,130 @@
+package client.world;
+
+import client.entityhandling.defs.DoorDef;
+import client.entityhandling.defs.TileDef;
+import client.model.Sector;
+import client.res.Resources;
+
+/**
+ * Collision flags, which describe how each tile restricts movement.
+ * 
+ * <p>A tile's flags depend only on that tile's own attributes. Each wall is
+ * stored on the tile whose minimum x or z edge it lies along, so a step
+ * across an edge is tested against the flags of the tile on its far side
+ * (when moving in the positive direction) or near side (when moving in the
+ * negative direction).
+ * 
+ * @author Dan Bryce
+ */
+public class Collision {
+
+    /**
+     * A blocking wall runs along the tile's minimum x edge.
+     */
+    public static final int WALL_MIN_X = 0x1;
+
+    /**
+     * A blocking wall runs along the tile's minimum z edge.
+     */
+    public static final int WALL_MIN_Z = 0x2;
+
+    /**
+     * The tile's ground overlay cannot be walked on (e.g. water).
+     */
+    public static final int SOLID_GROUND = 0x4;
+
+    /**
+     * A blocking diagonal wall crosses the tile.
+     */
+    public static final int DIAGONAL_WALL = 0x8;
+
+    /**
+     * Flags that prevent a tile from being entered.
+     */
+    public static final int BLOCKED = SOLID_GROUND | DIAGONAL_WALL;
+
+    /**
+     * Value of diagonalWalls above which the wall runs in the other
+     * direction.
+     */
+    private static final int DIAGONAL_WALL_FLIPPED = 12000;
+
+    private Collision() {}
+
+    /**
+     * Calculates the collision flags of every tile in the given Sector.
+     * 
+     * @param sector
+     */
+    public static void build(Sector sector) {
+        for (int x = 0; x < Sector.WIDTH; x++) {
+            for (int z = 0; z < Sector.DEPTH; z++) {
+                update(sector, x, z);
+            }
+        }
+    }
+
+    /**
+     * Recalculates the collision flags of a single tile.
+     * 
+     * <p>This should be called whenever a tile's walls or ground overlay
+     * change.
+     * 
+     * @param sector
+     * @param x
+     * @param z
+     * @return The new flags.
+     */
+    public static int update(Sector sector, int x, int z) {
+        int flags = getFlags(sector, x, z);
+        sector.setCollision(x, z, flags);
+        return flags;
+    }
+
+    private static int getFlags(Sector sector, int x, int z) {
+        
+        int flags = 0;
+        
+        if (isBlockingWall(sector.getHorizontalWall(x, z) & 0xff)) {
+            flags |= WALL_MIN_X;
+        }
+        
+        if (isBlockingWall(sector.getVerticalWall(x, z) & 0xff)) {
+            flags |= WALL_MIN_Z;
+        }
+        
+        int diagonalWalls = sector.getDiagonalWalls(x, z);
+        if (diagonalWalls > DIAGONAL_WALL_FLIPPED) {
+            diagonalWalls -= DIAGONAL_WALL_FLIPPED;
+        }
+        if (diagonalWalls < DIAGONAL_WALL_FLIPPED &&
+                isBlockingWall(diagonalWalls)) {
+            flags |= DIAGONAL_WALL;
+        }
+        
+        int groundOverlay = sector.getGroundOverlay(x, z) & 0xff;
+        if (groundOverlay > 0) {
+            TileDef tileDef = Resources.getTileDef(groundOverlay - 1);
+            if (tileDef != null && tileDef.getObjectType() != 0) {
+                flags |= SOLID_GROUND;
+            }
+        }
+        
+        return flags;
+    }
+
+    /**
+     * Determines if the given wall blocks movement.
+     * 
+     * @param wall Wall ID, plus one; 0 means no wall.
+     * @return
+     */
+    private static boolean isBlockingWall(int wall) {
+        if (wall <= 0) {
+            return false;
+        }
+        DoorDef doorDef = Resources.getDoorDef(wall - 1);
+        return doorDef != null && doorDef.getDoorType() != 0;
+    }
+
+}
@@ -69,6 +69,8 @@ public class GameObject {
                 // Special case object needs to be higher?
                 model.modTranslation(0, -480, 0);
             }
+            
+            world.getScene().updateModel(model);
         }
     }
     
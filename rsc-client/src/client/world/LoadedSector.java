@@ -0,0 +1,686 @@
+package client.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import client.model.Sector;
+import client.scene.Model;
+import client.scene.ModelPool;
+import client.scene.Scene;
+
+/**
+ * A Sector whose models have been built, ready to be placed in the World.
+ * 
+ * <p>Models are built relative to the Sector's first tile, and are moved into
+ * position when the Sector is placed within the loaded window. Since they
+ * do not depend on the window position, they can be kept as the window moves,
+ * and cached when the Sector leaves it.
+ * 
+ * <p>Every Sector has a simplified terrain model, used when it lies at the
+ * edge of a large window. The full-detail models are only built for Sectors
+ * that need them.
+ * 
+ * @author Dan Bryce
+ */
+public class LoadedSector {
+
+    /**
+     * Number of landscape chunks in the x-axis.
+     */
+    public static final int NUM_CHUNKS_X = Sector.WIDTH / World.CHUNK_WIDTH;
+
+    /**
+     * Number of landscape chunks in the z-axis.
+     */
+    public static final int NUM_CHUNKS_Z = Sector.DEPTH / World.CHUNK_DEPTH;
+
+    /**
+     * Total number of landscape chunks.
+     */
+    public static final int NUM_CHUNKS = NUM_CHUNKS_X * NUM_CHUNKS_Z;
+
+    /**
+     * Absolute co-ordinates of this Sector.
+     */
+    private int sectorX;
+    private int sectorZ;
+
+    /**
+     * The layer that was current when this Sector was built.
+     */
+    private int layer;
+
+    /**
+     * Tiles of the current layer.
+     */
+    private Sector sector;
+
+    private Model[] landscapeModels = new Model[NUM_CHUNKS];
+
+    /**
+     * Index of the vertex at each tile corner within each landscape chunk.
+     * 
+     * <p>Each chunk covers (CHUNK_WIDTH + 1) x (CHUNK_DEPTH + 1) corners,
+     * indexed by <code>x * (CHUNK_DEPTH + 1) + z</code> relative to the
+     * chunk's first tile. Corners without a vertex hold -1.
+     */
+    private int[][] landscapeVertices = new int[NUM_CHUNKS]
+            [(World.CHUNK_WIDTH + 1) * (World.CHUNK_DEPTH + 1)];
+
+    private Model[][] wallModels = new Model[World.NUM_LAYERS][];
+
+    private Model[][] roofModels = new Model[World.NUM_LAYERS][];
+
+    /**
+     * Layers on which each tile is covered by a roof, as a bitmask.
+     * 
+     * <p>Indexed by <code>x * Sector.DEPTH + z</code>.
+     */
+    private byte[] roofLayers = new byte[Sector.NUM_TILES];
+
+    /**
+     * Simplified terrain, used in place of all other models when this Sector
+     * is far from the player.
+     */
+    private Model farTerrainModel;
+
+    /**
+     * Whether the full-detail models have been built.
+     */
+    private boolean detailed;
+
+    /**
+     * Whether the full-detail models (as opposed to the simplified terrain)
+     * are currently in the Scene.
+     */
+    private boolean detailedInScene;
+
+    /**
+     * Whether any of this Sector's models are currently in the Scene.
+     */
+    private boolean inScene;
+
+    /**
+     * Current position of this Sector's models, in world units.
+     */
+    private int offsetX;
+    private int offsetZ;
+
+    /**
+     * Chunks whose models no longer match the tiles of the current layer, as
+     * a bitmask.
+     */
+    private int dirtyChunks;
+
+    /**
+     * Whether the simplified terrain no longer matches the tiles of the
+     * current layer.
+     */
+    private boolean farTerrainDirty;
+
+    public LoadedSector(int sectorX, int sectorZ, int layer, boolean detailed) {
+        this.sectorX = sectorX;
+        this.sectorZ = sectorZ;
+        this.layer = layer;
+        this.detailed = detailed;
+    }
+
+    public void setLandscapeModels(Model[] landscapeModels) {
+        this.landscapeModels = landscapeModels;
+
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            indexLandscapeVertices(i);
+        }
+    }
+
+    /**
+     * Sets the landscape model of a single chunk.
+     * 
+     * <p>The model must not yet have been moved.
+     * 
+     * @param chunk
+     * @param landscapeModel
+     */
+    public void setLandscapeModel(int chunk, Model landscapeModel) {
+        landscapeModels[chunk] = landscapeModel;
+        indexLandscapeVertices(chunk);
+    }
+
+    /**
+     * Records the vertex found at each tile corner of a landscape chunk.
+     * 
+     * <p>Where several vertices share a corner (e.g. bridges), the first one
+     * is kept.
+     * 
+     * @param chunk
+     */
+    private void indexLandscapeVertices(int chunk) {
+
+        int[] vertices = landscapeVertices[chunk];
+        Arrays.fill(vertices, -1);
+
+        Model model = landscapeModels[chunk];
+        int startX = (chunk % NUM_CHUNKS_X) * World.CHUNK_WIDTH;
+        int startZ = (chunk / NUM_CHUNKS_X) * World.CHUNK_DEPTH;
+
+        for (int vertex = 0; vertex < model.vertexIndex; vertex++) {
+
+            if (model.vertexX[vertex] % World.TILE_WIDTH != 0 ||
+                    model.vertexZ[vertex] % World.TILE_DEPTH != 0) {
+                continue;
+            }
+
+            int x = model.vertexX[vertex] / World.TILE_WIDTH - startX;
+            int z = model.vertexZ[vertex] / World.TILE_DEPTH - startZ;
+
+            if (x < 0 || x > World.CHUNK_WIDTH || z < 0 || z > World.CHUNK_DEPTH) {
+                continue;
+            }
+
+            int i = x * (World.CHUNK_DEPTH + 1) + z;
+            if (vertices[i] == -1) {
+                vertices[i] = vertex;
+            }
+        }
+    }
+
+    /**
+     * Gets the index of the vertex at the given tile corner within a
+     * landscape chunk.
+     * 
+     * <p>This must only be called before the Sector is first moved.
+     * 
+     * @param chunk
+     * @param x Tile co-ordinate relative to this Sector.
+     * @param z Tile co-ordinate relative to this Sector.
+     * @return Vertex index, or -1 if the chunk has no vertex there.
+     */
+    public int getLandscapeVertex(int chunk, int x, int z) {
+
+        if (chunk < 0 || chunk >= NUM_CHUNKS ||
+                landscapeModels[chunk] == null) {
+            return -1;
+        }
+
+        x -= (chunk % NUM_CHUNKS_X) * World.CHUNK_WIDTH;
+        z -= (chunk / NUM_CHUNKS_X) * World.CHUNK_DEPTH;
+
+        if (x < 0 || x > World.CHUNK_WIDTH || z < 0 || z > World.CHUNK_DEPTH) {
+            return -1;
+        }
+
+        return landscapeVertices[chunk][x * (World.CHUNK_DEPTH + 1) + z];
+    }
+
+    /**
+     * Moves all models so that this Sector's first tile lies at the given
+     * position.
+     * 
+     * @param x Position in world units.
+     * @param z Position in world units.
+     * @return True if the models were moved.
+     */
+    public boolean moveTo(int x, int z) {
+
+        int dx = x - offsetX;
+        int dz = z - offsetZ;
+
+        if (dx == 0 && dz == 0) {
+            return false;
+        }
+
+        for (Model model : getModels()) {
+            model.setTranslation(dx, 0, dz);
+            model.resetTransformation();
+        }
+
+        offsetX = x;
+        offsetZ = z;
+        return true;
+    }
+
+    /**
+     * Adds this Sector's models to the Scene, in their respective render
+     * layers.
+     * 
+     * @param scene
+     * @param detailed Whether to add the full-detail models, rather than the
+     * simplified terrain.
+     */
+    public void addToScene(Scene scene, boolean detailed) {
+        
+        detailedInScene = detailed;
+        inScene = true;
+        
+        if (!detailed) {
+            scene.addModel(farTerrainModel, Scene.LAYER_TERRAIN);
+            return;
+        }
+        
+        for (Model model : landscapeModels) {
+            if (model != null) {
+                scene.addModel(model, Scene.LAYER_TERRAIN);
+            }
+        }
+        for (int layer = 0; layer < World.NUM_LAYERS; layer++) {
+            if (wallModels[layer] != null) {
+                for (Model model : wallModels[layer]) {
+                    scene.addModel(model, Scene.getWallLayer(layer));
+                }
+            }
+            if (roofModels[layer] != null) {
+                for (Model model : roofModels[layer]) {
+                    scene.addModel(model, Scene.getRoofLayer(layer));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the current layer's models for a single chunk, after its tiles
+     * have changed.
+     * 
+     * <p>The new models must not yet have been moved; they are moved to this
+     * Sector's current position, and swapped into the Scene if the full-detail
+     * models are in it.
+     * 
+     * @param scene
+     * @param chunk
+     * @param landscapeModel
+     * @param wallModel
+     * @param roofModel
+     */
+    public void replaceChunkModels(Scene scene, int chunk,
+            Model landscapeModel, Model wallModel, Model roofModel) {
+        
+        Model prevLandscapeModel = landscapeModels[chunk];
+        setLandscapeModel(chunk, landscapeModel);
+        replaceModel(scene, prevLandscapeModel, landscapeModel,
+                Scene.LAYER_TERRAIN);
+        
+        if (wallModels[layer] != null) {
+            replaceModel(scene, wallModels[layer][chunk], wallModel,
+                    Scene.getWallLayer(layer));
+            wallModels[layer][chunk] = wallModel;
+        }
+        
+        if (roofModels[layer] != null) {
+            replaceModel(scene, roofModels[layer][chunk], roofModel,
+                    Scene.getRoofLayer(layer));
+            roofModels[layer][chunk] = roofModel;
+        }
+    }
+
+    /**
+     * Replaces the simplified terrain, after any tiles have changed.
+     * 
+     * @param scene
+     * @param farTerrainModel New model, which must not yet have been moved.
+     */
+    public void replaceFarTerrainModel(Scene scene, Model farTerrainModel) {
+        replaceModel(scene, this.farTerrainModel, farTerrainModel,
+                Scene.LAYER_TERRAIN);
+        this.farTerrainModel = farTerrainModel;
+    }
+
+    /**
+     * Moves a new model into position and swaps it into the Scene in place
+     * of the old one.
+     * 
+     * <p>The old model is released to the ModelPool.
+     * 
+     * @param scene
+     * @param prevModel
+     * @param model
+     * @param renderLayer
+     */
+    private void replaceModel(Scene scene, Model prevModel, Model model,
+            int renderLayer) {
+        
+        model.setTranslation(offsetX, 0, offsetZ);
+        model.resetTransformation();
+        
+        if (scene.containsModel(prevModel)) {
+            scene.removeModel(prevModel);
+            scene.addModel(model, renderLayer);
+        }
+        
+        ModelPool.release(prevModel);
+    }
+
+    /**
+     * Updates the position of all models within the Scene.
+     * 
+     * @param scene
+     */
+    public void updateInScene(Scene scene) {
+        for (Model model : getModels()) {
+            scene.updateModel(model);
+        }
+    }
+
+    /**
+     * Removes all models from the Scene.
+     * 
+     * @param scene
+     */
+    public void removeFromScene(Scene scene) {
+        for (Model model : getModels()) {
+            scene.removeModel(model);
+        }
+        inScene = false;
+    }
+
+    /**
+     * Releases all models to the ModelPool, once this Sector has been
+     * discarded.
+     * 
+     * <p>This Sector must not be used again afterwards.
+     */
+    public void releaseModels() {
+        
+        if (inScene) {
+            // Still in use
+            return;
+        }
+        
+        for (Model model : getModels()) {
+            ModelPool.release(model);
+        }
+        
+        farTerrainModel = null;
+        Arrays.fill(landscapeModels, null);
+        Arrays.fill(wallModels, null);
+        Arrays.fill(roofModels, null);
+    }
+
+    public boolean isInScene() {
+        return inScene;
+    }
+
+    /**
+     * Estimates the memory used by this Sector's models.
+     * 
+     * @return Approximate size, in bytes.
+     */
+    public int getMemoryUsage() {
+        int size = 0;
+        for (Model model : getModels()) {
+            size += model.getMemoryUsage();
+        }
+        return size;
+    }
+
+    /**
+     * Gets all models belonging to this Sector.
+     * 
+     * @return
+     */
+    private Model[] getModels() {
+
+        int numModels = 0;
+        Model[] models = new Model[NUM_CHUNKS * (1 + World.NUM_LAYERS * 2) + 1];
+        
+        if (farTerrainModel != null) {
+            models[numModels++] = farTerrainModel;
+        }
+
+        for (Model model : landscapeModels) {
+            if (model != null) {
+                models[numModels++] = model;
+            }
+        }
+        for (int layer = 0; layer < World.NUM_LAYERS; layer++) {
+            if (wallModels[layer] != null) {
+                for (Model model : wallModels[layer]) {
+                    models[numModels++] = model;
+                }
+            }
+            if (roofModels[layer] != null) {
+                for (Model model : roofModels[layer]) {
+                    models[numModels++] = model;
+                }
+            }
+        }
+
+        return Arrays.copyOf(models, numModels);
+    }
+
+    /**
+     * Writes this Sector and all of its models into a ByteBuffer.
+     * 
+     * <p>This must only be called on a fully-built Sector that has not yet
+     * been moved.
+     * 
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer pack() throws IOException {
+        
+        ByteBuffer sectorData = sector.pack();
+        Model[] models = getModels();
+        ByteBuffer[] modelData = new ByteBuffer[models.length];
+        int size = 16 + sectorData.remaining() + roofLayers.length +
+                World.NUM_LAYERS * 2;
+        
+        for (int i = 0; i < models.length; i++) {
+            modelData[i] = models[i].pack();
+            size += modelData[i].remaining();
+        }
+        
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(sectorX);
+        out.putInt(sectorZ);
+        out.putInt(layer);
+        out.putInt(detailed ? 1 : 0);
+        out.put(sectorData);
+        out.put(roofLayers);
+        for (int layer = 0; layer < World.NUM_LAYERS; layer++) {
+            out.put((byte) (wallModels[layer] != null ? 1 : 0));
+            out.put((byte) (roofModels[layer] != null ? 1 : 0));
+        }
+        
+        // Models are written in the same order as getModels()
+        for (ByteBuffer data : modelData) {
+            out.put(data);
+        }
+        
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Creates a new LoadedSector from data written by {@link #pack()}.
+     * 
+     * <p>Since the simplified terrain is written first, a Sector that is not
+     * needed in detail can skip the rest of the models.
+     * 
+     * @param in
+     * @param detailed Whether to unpack the full-detail models, if present.
+     * @return
+     * @throws IOException
+     */
+    public static LoadedSector unpack(ByteBuffer in, boolean detailed)
+            throws IOException {
+        
+        int sectorX = in.getInt();
+        int sectorZ = in.getInt();
+        int layer = in.getInt();
+        detailed &= in.getInt() == 1;
+        
+        LoadedSector loadedSector =
+                new LoadedSector(sectorX, sectorZ, layer, detailed);
+        Sector sector = Sector.unpack(in);
+        Collision.build(sector);
+        loadedSector.setSector(sector);
+        in.get(loadedSector.roofLayers);
+        
+        boolean[] hasWalls = new boolean[World.NUM_LAYERS];
+        boolean[] hasRoofs = new boolean[World.NUM_LAYERS];
+        for (int i = 0; i < World.NUM_LAYERS; i++) {
+            hasWalls[i] = in.get() == 1;
+            hasRoofs[i] = in.get() == 1;
+        }
+        
+        loadedSector.setFarTerrainModel(Model.unpack(in));
+        
+        if (!detailed) {
+            return loadedSector;
+        }
+        
+        loadedSector.setLandscapeModels(unpackModels(in));
+        
+        for (int i = 0; i < World.NUM_LAYERS; i++) {
+            if (hasWalls[i]) {
+                loadedSector.setWallModels(i, unpackModels(in));
+            }
+            if (hasRoofs[i]) {
+                loadedSector.setRoofModels(i, unpackModels(in));
+            }
+        }
+        
+        return loadedSector;
+    }
+
+    private static Model[] unpackModels(ByteBuffer in) {
+        Model[] models = new Model[NUM_CHUNKS];
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            models[i] = Model.unpack(in);
+        }
+        return models;
+    }
+
+    public int getSectorX() {
+        return sectorX;
+    }
+
+    public int getSectorZ() {
+        return sectorZ;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public void setSector(Sector sector) {
+        this.sector = sector;
+    }
+
+    public Sector getSector() {
+        return sector;
+    }
+
+    /**
+     * Determines if the full-detail models have been built.
+     * 
+     * @return
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    public boolean isDetailedInScene() {
+        return detailedInScene;
+    }
+
+    public void setFarTerrainModel(Model farTerrainModel) {
+        this.farTerrainModel = farTerrainModel;
+    }
+
+    public Model getFarTerrainModel() {
+        return farTerrainModel;
+    }
+
+    public Model getLandscapeModel(int i) {
+        return landscapeModels[i];
+    }
+
+    public void setWallModels(int layer, Model[] wallModels) {
+        this.wallModels[layer] = wallModels;
+    }
+
+    public Model getWallModel(int layer, int i) {
+        return wallModels[layer] == null ? null : wallModels[layer][i];
+    }
+
+    public void setRoofModels(int layer, Model[] roofModels) {
+        this.roofModels[layer] = roofModels;
+    }
+
+    public Model getRoofModel(int layer, int i) {
+        return roofModels[layer] == null ? null : roofModels[layer][i];
+    }
+
+    /**
+     * Records that a tile is covered by a roof on the given layer.
+     * 
+     * @param x Tile co-ordinate relative to this Sector.
+     * @param z Tile co-ordinate relative to this Sector.
+     * @param layer
+     */
+    public void setRoofed(int x, int z, int layer) {
+        roofLayers[x * Sector.DEPTH + z] |= 1 << layer;
+    }
+
+    /**
+     * Records that a tile is not covered by a roof on the given layer.
+     * 
+     * @param x Tile co-ordinate relative to this Sector.
+     * @param z Tile co-ordinate relative to this Sector.
+     * @param layer
+     */
+    public void clearRoofed(int x, int z, int layer) {
+        roofLayers[x * Sector.DEPTH + z] &= ~(1 << layer);
+    }
+
+    /**
+     * Gets the layers on which a tile is covered by a roof.
+     * 
+     * @param x Tile co-ordinate relative to this Sector.
+     * @param z Tile co-ordinate relative to this Sector.
+     * @return Bitmask with bit <i>n</i> set if there is a roof on layer
+     * <i>n</i>.
+     */
+    public int getRoofLayers(int x, int z) {
+        return roofLayers[x * Sector.DEPTH + z];
+    }
+
+    /**
+     * Flags a chunk as needing its models rebuilt.
+     * 
+     * @param chunk
+     */
+    public void markChunkDirty(int chunk) {
+        dirtyChunks |= 1 << chunk;
+    }
+
+    /**
+     * Gets the chunks that need their models rebuilt.
+     * 
+     * @return Bitmask with bit <i>n</i> set if chunk <i>n</i> is dirty.
+     */
+    public int getDirtyChunks() {
+        return dirtyChunks;
+    }
+
+    /**
+     * Flags the simplified terrain as needing to be rebuilt.
+     * 
+     * <p>This is only needed if the ground itself has changed; the simplified
+     * terrain does not show walls or roofs.
+     */
+    public void markFarTerrainDirty() {
+        farTerrainDirty = true;
+    }
+
+    public boolean isFarTerrainDirty() {
+        return farTerrainDirty;
+    }
+
+    public void clearDirtyChunks() {
+        dirtyChunks = 0;
+        farTerrainDirty = false;
+    }
+
+}
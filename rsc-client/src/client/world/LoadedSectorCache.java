@@ -0,0 +1,141 @@
+package client.world;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used cache of LoadedSectors that have left the World.
+ * 
+ * <p>Each entry holds the chunk models built for one Sector, in one layer.
+ * Since the models are moved into position whenever a Sector is placed in the
+ * World, they can be reused wherever the window happens to be.
+ * 
+ * <p>Sectors that are evicted, or replaced by a newer build, have their
+ * models released to the ModelPool unless they are still in the Scene.
+ * 
+ * <p>This class is not thread-safe; it should only be used from the game
+ * thread.
+ * 
+ * @author Dan Bryce
+ */
+public class LoadedSectorCache {
+
+    /**
+     * Cached Sectors, from least- to most-recently used.
+     */
+    private LinkedHashMap<String, LoadedSector> sectors =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum number of Sectors to keep.
+     */
+    private int capacity;
+
+    private int hits;
+    private int misses;
+
+    public LoadedSectorCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the cached Sector at the given position, built for the given
+     * layer.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @return The cached Sector, or null if it is not cached.
+     */
+    public LoadedSector get(int sectorX, int sectorZ, int layer) {
+        LoadedSector sector = sectors.get(getKey(sectorX, sectorZ, layer));
+        if (sector == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return sector;
+    }
+
+    /**
+     * Gets the cached Sector at the given position, without counting towards
+     * the cache statistics.
+     * 
+     * <p>This still marks the Sector as recently used, since it is expected
+     * to be needed soon.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @return The cached Sector, or null if it is not cached.
+     */
+    public LoadedSector peek(int sectorX, int sectorZ, int layer) {
+        return sectors.get(getKey(sectorX, sectorZ, layer));
+    }
+
+    /**
+     * Adds a Sector to the cache, evicting the least-recently used Sector if
+     * the cache is full.
+     * 
+     * @param sector
+     */
+    public void put(LoadedSector sector) {
+        LoadedSector prevSector = sectors.put(getKey(
+                sector.getSectorX(),
+                sector.getSectorZ(),
+                sector.getLayer()), sector);
+        if (prevSector != null && prevSector != sector) {
+            prevSector.releaseModels();
+        }
+        evict();
+    }
+
+    private void evict() {
+        while (sectors.size() > capacity) {
+            String eldest = sectors.keySet().iterator().next();
+            sectors.remove(eldest).releaseModels();
+        }
+    }
+
+    private static String getKey(int sectorX, int sectorZ, int layer) {
+        return sectorX + "," + sectorZ + "," + layer;
+    }
+
+    /**
+     * Removes all cached Sectors.
+     */
+    public void clear() {
+        for (LoadedSector sector : sectors.values()) {
+            sector.releaseModels();
+        }
+        sectors.clear();
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        evict();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return sectors.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadedSectorCache [sectors=" + sectors.size() +
+                ", hits=" + hits +
+                ", misses=" + misses + "]";
+    }
+
+}
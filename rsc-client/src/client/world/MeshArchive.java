@@ -0,0 +1,176 @@
+package client.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Archive of pre-built LoadedSectors, produced offline by {@link MeshBaker}.
+ * 
+ * <p>The archive is memory-mapped, and Sectors are unpacked from it on
+ * demand using bulk copies, which is much faster than building them.
+ * 
+ * <p>The file begins with a header (magic number, version, flags and entry
+ * count),
+ * followed by an index of every entry (sector co-ordinates, layer, offset
+ * and length), followed by the packed Sectors themselves.
+ * 
+ * <p>This class is thread-safe, as Sectors may be loaded by a background
+ * thread.
+ * 
+ * @author Dan Bryce
+ */
+public class MeshArchive {
+
+    /**
+     * Name of the archive within the data directory.
+     */
+    public static final String FILENAME = "Meshes.rscd";
+
+    /**
+     * Magic number at the start of the archive ("MESH").
+     */
+    public static final int MAGIC = 0x4d455348;
+
+    /**
+     * Version of the archive format and of the meshes within it.
+     * 
+     * <p>This must be incremented whenever the WorldLoader's output changes,
+     * so that stale archives are ignored.
+     */
+    public static final int VERSION = 6;
+
+    /**
+     * Size of the header, in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Header flag set if the Sectors were built with merged faces.
+     */
+    public static final int FLAG_MERGE_FACES = 1;
+
+    /**
+     * Size of each index entry, in bytes.
+     */
+    public static final int INDEX_ENTRY_SIZE = 20;
+
+    /**
+     * Contents of the archive.
+     */
+    private MappedByteBuffer data;
+
+    /**
+     * Whether the Sectors were built with merged faces.
+     */
+    private boolean mergeFaces;
+
+    /**
+     * Offset and length of each entry, by key.
+     */
+    private Map<String, int[]> index = new HashMap<>();
+
+    /**
+     * Maps the given archive into memory and reads its index.
+     * 
+     * @param file
+     * @throws IOException if the archive cannot be read, or is out of date.
+     */
+    public MeshArchive(File file) throws IOException {
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a mesh archive: " + file);
+        }
+        
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Mesh archive is out of date: " + file +
+                    " (version " + version + ", expected " + VERSION + ")");
+        }
+        
+        int flags = data.getInt();
+        mergeFaces = (flags & FLAG_MERGE_FACES) != 0;
+        
+        int numEntries = data.getInt();
+        for (int i = 0; i < numEntries; i++) {
+            int sectorX = data.getInt();
+            int sectorZ = data.getInt();
+            int layer = data.getInt();
+            int offset = data.getInt();
+            int length = data.getInt();
+            index.put(getKey(sectorX, sectorZ, layer),
+                    new int[] { offset, length });
+        }
+    }
+
+    /**
+     * Determines if the archive contains the given Sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @return
+     */
+    public boolean contains(int sectorX, int sectorZ, int layer) {
+        return index.containsKey(getKey(sectorX, sectorZ, layer));
+    }
+
+    /**
+     * Unpacks the given Sector from the archive.
+     * 
+     * <p>Every Sector is baked in full detail, but only its simplified
+     * terrain is unpacked if that is all that is needed.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param detailed Whether to unpack the full-detail models, as well as
+     * the simplified terrain.
+     * @return The Sector, or null if it is not in the archive.
+     * @throws IOException
+     */
+    public LoadedSector load(int sectorX, int sectorZ, int layer,
+            boolean detailed) throws IOException {
+        
+        int[] entry = index.get(getKey(sectorX, sectorZ, layer));
+        if (entry == null) {
+            return null;
+        }
+        
+        // Each caller gets its own view of the data
+        ByteBuffer in = data.duplicate();
+        in.position(entry[0]);
+        in.limit(entry[0] + entry[1]);
+        
+        return LoadedSector.unpack(in.slice(), detailed);
+    }
+
+    public static String getKey(int sectorX, int sectorZ, int layer) {
+        return sectorX + "," + sectorZ + "," + layer;
+    }
+
+    /**
+     * Determines if the Sectors in this archive were built with merged faces.
+     * 
+     * @return
+     * @see WorldLoader#setMergeFaces(boolean)
+     */
+    public boolean isMergeFaces() {
+        return mergeFaces;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+}
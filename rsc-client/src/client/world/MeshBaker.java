@@ -0,0 +1,146 @@
+package client.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import client.entityhandling.defs.DoorDef;
+import client.entityhandling.defs.ElevationDef;
+import client.entityhandling.defs.TileDef;
+import client.res.Resources;
+
+/**
+ * Build-time tool that pre-builds every Sector in the landscape archive and
+ * writes the results to a {@link MeshArchive}.
+ * 
+ * <p>Usage: <code>MeshBaker [output file]</code>, run from the directory
+ * containing <code>res/</code>. The archive is written to the data directory
+ * by default.
+ * 
+ * @author Dan Bryce
+ */
+public class MeshBaker {
+
+    private static final String LANDSCAPE_FILENAME = "Landscape.rscd";
+
+    /**
+     * Pattern of the entry names in the landscape archive.
+     */
+    private static final Pattern SECTOR_NAME_PATTERN =
+            Pattern.compile("h(\\d+)x(\\d+)y(\\d+)");
+
+    public static void main(String[] args) throws IOException {
+        
+        File output = new File(args.length > 0 ?
+                args[0] : Resources.DATA_DIR + MeshArchive.FILENAME);
+        
+        Resources.tiles     = (TileDef[])      Resources.loadData("Tiles.rscd");
+        Resources.doors     = (DoorDef[])      Resources.loadData("Doors.rscd");
+        Resources.elevation = (ElevationDef[]) Resources.loadData("Elevation.rscd");
+        Resources.tileArchive = new ZipFile(new File(
+                Resources.DATA_DIR + LANDSCAPE_FILENAME));
+        
+        List<int[]> sectors = findSectors(Resources.tileArchive);
+        
+        long start = System.currentTimeMillis();
+        bake(output, sectors);
+        
+        System.out.println("Baked " + sectors.size() + " sectors to " +
+                output + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Finds all Sectors in the given landscape archive.
+     * 
+     * @param tileArchive
+     * @return Co-ordinates and layer of each Sector.
+     */
+    private static List<int[]> findSectors(ZipFile tileArchive) {
+        
+        List<int[]> sectors = new ArrayList<>();
+        
+        Enumeration<? extends ZipEntry> entries = tileArchive.entries();
+        while (entries.hasMoreElements()) {
+            Matcher matcher = SECTOR_NAME_PATTERN.matcher(
+                    entries.nextElement().getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            
+            int layer = Integer.parseInt(matcher.group(1));
+            int sectorX = Integer.parseInt(matcher.group(2));
+            int sectorZ = Integer.parseInt(matcher.group(3));
+            
+            if (layer < World.NUM_LAYERS) {
+                sectors.add(new int[] { sectorX, sectorZ, layer });
+            }
+        }
+        
+        return sectors;
+    }
+
+    /**
+     * Builds the given Sectors and writes them to an archive.
+     * 
+     * @param output
+     * @param sectors
+     * @throws IOException
+     */
+    private static void bake(File output, List<int[]> sectors)
+            throws IOException {
+        
+        WorldLoader loader = new WorldLoader(null);
+        
+        int dataStart = MeshArchive.HEADER_SIZE +
+                sectors.size() * MeshArchive.INDEX_ENTRY_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(dataStart);
+        header.putInt(MeshArchive.MAGIC);
+        header.putInt(MeshArchive.VERSION);
+        header.putInt(loader.isMergeFaces() ? MeshArchive.FLAG_MERGE_FACES : 0);
+        header.putInt(sectors.size());
+        
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw");
+                FileChannel channel = raf.getChannel()) {
+            
+            channel.truncate(0);
+            long offset = dataStart;
+            
+            for (int[] sector : sectors) {
+                
+                ByteBuffer data = loader.buildSector(
+                        sector[0], sector[1], sector[2], true).pack();
+                int length = data.remaining();
+                
+                if (offset + length > Integer.MAX_VALUE) {
+                    throw new IOException("Mesh archive is too large");
+                }
+                
+                header.putInt(sector[0]);
+                header.putInt(sector[1]);
+                header.putInt(sector[2]);
+                header.putInt((int) offset);
+                header.putInt(length);
+                
+                while (data.hasRemaining()) {
+                    channel.write(data, offset + length - data.remaining());
+                }
+                offset += length;
+            }
+            
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+}
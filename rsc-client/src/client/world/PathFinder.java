@@ -0,0 +1,567 @@
+package client.world;
+
+import java.util.Arrays;
+
+/**
+ * Finds walkable routes between tiles within the loaded World.
+ * 
+ * <p>Routes are found using an A* search, in which every step (straight or
+ * diagonal) costs the same, and the estimated cost of a tile is its
+ * Chebyshev distance from the end of the search. Unlike a breadth-first
+ * search, this only explores the tiles around the route, so the cost of a
+ * search depends on the length of the route rather than the size of the
+ * window.
+ * 
+ * <p>All working storage is allocated up-front and reused, so a search
+ * performs no allocations:
+ * 
+ * <ul>
+ * <li>Tiles are encoded as a single int, with a border of blocked tiles
+ * around the window, so that a step in any direction is a fixed change to
+ * this index and never leaves the arrays.
+ * <li>The open set is a bucket queue: a linked list of tiles for each
+ * estimated cost. Since the estimate never decreases as the search goes on,
+ * finding the next tile to expand takes constant time. The most recently
+ * added tile is expanded first, which keeps the search heading for its goal
+ * when many tiles share the same estimate.
+ * <li>Visited tiles are marked with the number of the current search, so
+ * the visited array never needs to be cleared between searches.
+ * <li>The directions in which each tile can be left are worked out the
+ * first time they are needed, and kept until the World's collision flags
+ * change, so most searches only need a single array lookup for each step.
+ * </ul>
+ * 
+ * <p>Movement is restricted by the World's {@link Collision} flags, and
+ * diagonal steps may not cut the corner of anything that would block either
+ * of the equivalent pair of straight steps.
+ * 
+ * @author Dan Bryce
+ */
+public class PathFinder {
+
+    /**
+     * Change in x for each direction.
+     * 
+     * <p>Straight directions come first, so that ties are broken in favour
+     * of straight lines.
+     */
+    private static final int[] DIRECTION_X = { -1, 1, 0, 0, -1, -1, 1, 1 };
+
+    /**
+     * Change in z for each direction.
+     */
+    private static final int[] DIRECTION_Z = { 0, 0, -1, 1, -1, 1, -1, 1 };
+
+    /**
+     * Direction for each change in x and z, indexed by
+     * <code>(dx + 1) * 3 + dz + 1</code>.
+     */
+    private static final int[] DIRECTIONS = { 4, 0, 5, 2, -1, 3, 6, 1, 7 };
+
+    /**
+     * Flag set in {@link #exits} if a tile cannot be entered.
+     */
+    private static final int BLOCKED = 1 << DIRECTION_X.length;
+
+    /**
+     * Value of {@link #prevTiles} for a tile that has been expanded.
+     */
+    private static final int EXPANDED = -2;
+
+    /**
+     * Value of {@link #nextTiles} or {@link #prevTiles} at the end of a list.
+     */
+    private static final int NONE = -1;
+
+    private World world;
+
+    /**
+     * Change in tile index for each direction.
+     */
+    private int[] directionOffsets = new int[DIRECTION_X.length];
+
+    /**
+     * Difference in tile index between neighbouring tiles in the x-axis.
+     */
+    private int stride;
+
+    /**
+     * Search in which each tile was last visited.
+     */
+    private int[] visited;
+
+    /**
+     * Direction to step from each visited tile to get closer to the
+     * destination.
+     */
+    private byte[] directions;
+
+    /**
+     * Directions in which each tile can be left, as a bit per direction,
+     * plus the {@link #BLOCKED} flag.
+     */
+    private short[] exits;
+
+    /**
+     * Collision version of the World when each tile's exits were found.
+     */
+    private int[] exitsVersion;
+
+    /**
+     * Number of steps from the destination to each visited tile.
+     */
+    private int[] costs;
+
+    /**
+     * Neighbours of each tile in the list of tiles waiting to be expanded
+     * with the same estimated cost.
+     */
+    private int[] nextTiles;
+    private int[] prevTiles;
+
+    /**
+     * First tile in the list for each estimated cost.
+     */
+    private int[] bucketHeads;
+
+    /**
+     * Search in which each bucket was last used.
+     */
+    private int[] bucketSearch;
+
+    /**
+     * Number of tiles waiting to be expanded.
+     */
+    private int numOpenTiles;
+
+    /**
+     * Tile at the end of the current search, relative to the World origin.
+     */
+    private int goalX;
+    private int goalZ;
+
+    /**
+     * Number of the current search.
+     */
+    private int search;
+
+    public PathFinder(World world) {
+        this.world = world;
+        
+        // Leave room for the border
+        stride = world.getNumTilesZ() + 2;
+        int numTiles = (world.getNumTilesX() + 2) * stride;
+        
+        for (int i = 0; i < DIRECTION_X.length; i++) {
+            directionOffsets[i] = DIRECTION_X[i] * stride + DIRECTION_Z[i];
+        }
+        
+        visited = new int[numTiles];
+        directions = new byte[numTiles];
+        exits = new short[numTiles];
+        exitsVersion = new int[numTiles];
+        costs = new int[numTiles];
+        nextTiles = new int[numTiles];
+        prevTiles = new int[numTiles];
+        
+        // No route can be longer than the number of tiles, and no estimate
+        // can be larger than the window
+        int numBuckets = numTiles +
+                Math.max(world.getNumTilesX(), world.getNumTilesZ());
+        bucketHeads = new int[numBuckets];
+        bucketSearch = new int[numBuckets];
+    }
+
+    /**
+     * Finds the shortest route between 2 tiles.
+     * 
+     * <p>The route is returned as a list of waypoints, ending with the
+     * destination. A Mob walks towards each waypoint diagonally until it is
+     * level with it in one axis, and then straight on, so each waypoint is
+     * placed as far along the route as it can be reached in this way.
+     * 
+     * <p>If the route has more waypoints than will fit in the given arrays,
+     * only the first part of the route is returned, and the last waypoint
+     * will not be the destination. The rest of the route can be found by
+     * searching again once the last waypoint has been reached.
+     * 
+     * @param startX Tile co-ordinate relative to the World origin.
+     * @param startZ Tile co-ordinate relative to the World origin.
+     * @param endX Tile co-ordinate relative to the World origin.
+     * @param endZ Tile co-ordinate relative to the World origin.
+     * @param waypointsX Array to receive the x co-ordinate of each waypoint.
+     * @param waypointsZ Array to receive the z co-ordinate of each waypoint.
+     * @return Number of waypoints, or -1 if there is no route.
+     */
+    public int findPath(int startX, int startZ, int endX, int endZ,
+            int[] waypointsX, int[] waypointsZ) {
+        
+        if (!world.containsTileRelativeToOrigin(startX, startZ) ||
+                !world.containsTileRelativeToOrigin(endX, endZ) ||
+                isBlocked(endX, endZ)) {
+            return -1;
+        }
+        
+        if (startX == endX && startZ == endZ) {
+            return 0;
+        }
+        
+        if (!search(startX, startZ, endX, endZ)) {
+            return -1;
+        }
+        
+        // Follow the directions from the start to the destination, adding a
+        // waypoint wherever the route can no longer be walked directly
+        int numWaypoints = 0;
+        int fromX = startX;
+        int fromZ = startZ;
+        int prevX = startX;
+        int prevZ = startZ;
+        int x = startX;
+        int z = startZ;
+        
+        while (x != endX || z != endZ) {
+            
+            int direction = directions[getIndex(x, z)];
+            x += DIRECTION_X[direction];
+            z += DIRECTION_Z[direction];
+            
+            if (!canWalk(fromX, fromZ, x, z)) {
+                if (numWaypoints == waypointsX.length) {
+                    return numWaypoints;
+                }
+                waypointsX[numWaypoints] = prevX;
+                waypointsZ[numWaypoints] = prevZ;
+                numWaypoints++;
+                fromX = prevX;
+                fromZ = prevZ;
+            }
+            
+            prevX = x;
+            prevZ = z;
+        }
+        
+        if (numWaypoints < waypointsX.length) {
+            waypointsX[numWaypoints] = endX;
+            waypointsZ[numWaypoints] = endZ;
+            numWaypoints++;
+        }
+        
+        return numWaypoints;
+    }
+
+    /**
+     * Determines if a Mob can walk directly from one tile to another.
+     * 
+     * <p>Mobs move diagonally until they are level with their destination in
+     * one axis, and then straight on.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @param toX Tile co-ordinate relative to the World origin.
+     * @param toZ Tile co-ordinate relative to the World origin.
+     * @return
+     */
+    private boolean canWalk(int x, int z, int toX, int toZ) {
+        
+        int tile = getIndex(x, z);
+        int end = getIndex(toX, toZ);
+        
+        while (tile != end) {
+            
+            int dx = Integer.signum(toX - x);
+            int dz = Integer.signum(toZ - z);
+            int direction = getDirection(dx, dz);
+            
+            if ((getExits(tile) & (1 << direction)) == 0) {
+                return false;
+            }
+            
+            x += dx;
+            z += dz;
+            tile += directionOffsets[direction];
+        }
+        
+        return true;
+    }
+
+    /**
+     * Searches outwards from the destination until the start is reached.
+     * 
+     * <p>Searching backwards means that each visited tile records which way
+     * to step to reach the destination, so the route can be read off in
+     * order afterwards.
+     * 
+     * <p>Where there is a choice between equally short routes, steps that
+     * carry straight on are preferred, to keep the number of waypoints down.
+     * 
+     * @param startX
+     * @param startZ
+     * @param endX
+     * @param endZ
+     * @return True if the start was reached.
+     */
+    private boolean search(int startX, int startZ, int endX, int endZ) {
+        
+        search++;
+        if (search == Integer.MAX_VALUE) {
+            // Rare, but stale marks must not be mistaken for current ones
+            Arrays.fill(visited, 0);
+            Arrays.fill(bucketSearch, 0);
+            search = 1;
+        }
+        
+        int start = getIndex(startX, startZ);
+        int end = getIndex(endX, endZ);
+        goalX = startX;
+        goalZ = startZ;
+        numOpenTiles = 0;
+        
+        visited[end] = search;
+        costs[end] = 0;
+        directions[end] = (byte) NONE;
+        int bucket = getEstimate(endX, endZ);
+        push(end, bucket);
+        
+        while (numOpenTiles > 0) {
+            
+            // Find the tile with the lowest estimate
+            while (bucketSearch[bucket] != search ||
+                    bucketHeads[bucket] == NONE) {
+                bucket++;
+            }
+            int tile = bucketHeads[bucket];
+            remove(tile, bucket);
+            prevTiles[tile] = EXPANDED;
+            
+            int x = tile / stride - 1;
+            int z = tile % stride - 1;
+            int cost = costs[tile] + 1;
+            
+            for (int i = 0; i < DIRECTION_X.length; i++) {
+                
+                // Consider stepping from the neighbour to this tile
+                int from = tile - directionOffsets[i];
+                boolean seen = visited[from] == search;
+                if (seen && prevTiles[from] == EXPANDED) {
+                    continue;
+                }
+                
+                // The start tile may itself be blocked (e.g. after a door
+                // has closed), but the player can still leave it
+                int fromExits = getExits(from);
+                if (from != start && (fromExits & BLOCKED) != 0) {
+                    continue;
+                }
+                
+                if ((fromExits & (1 << i)) == 0) {
+                    continue;
+                }
+                
+                int estimate = getEstimate(
+                        x - DIRECTION_X[i], z - DIRECTION_Z[i]);
+                
+                if (!seen) {
+                    visited[from] = search;
+                    
+                } else if (cost < costs[from]) {
+                    // Found a shorter way to a tile that is already waiting
+                    remove(from, costs[from] + estimate);
+                    
+                } else {
+                    if (cost == costs[from] && i == directions[tile]) {
+                        // Carry straight on through this tile instead
+                        directions[from] = (byte) i;
+                    }
+                    continue;
+                }
+                
+                costs[from] = cost;
+                directions[from] = (byte) i;
+                
+                if (from == start) {
+                    // No route can be shorter, since every tile waiting has
+                    // an estimate at least as high
+                    return true;
+                }
+                
+                push(from, cost + estimate);
+            }
+        }
+        
+        return false;
+    }
+
+    /**
+     * Estimates the number of steps from a tile to the end of the search.
+     * 
+     * <p>This is the number of steps it would take if nothing were in the
+     * way, so it never overestimates.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return
+     */
+    private int getEstimate(int x, int z) {
+        return Math.max(Math.abs(x - goalX), Math.abs(z - goalZ));
+    }
+
+    /**
+     * Adds a tile to the front of the list for the given estimate.
+     * 
+     * @param tile
+     * @param bucket
+     */
+    private void push(int tile, int bucket) {
+        
+        if (bucketSearch[bucket] != search) {
+            bucketSearch[bucket] = search;
+            bucketHeads[bucket] = NONE;
+        }
+        
+        int head = bucketHeads[bucket];
+        nextTiles[tile] = head;
+        prevTiles[tile] = NONE;
+        if (head != NONE) {
+            prevTiles[head] = tile;
+        }
+        bucketHeads[bucket] = tile;
+        numOpenTiles++;
+    }
+
+    /**
+     * Removes a tile from the list for the given estimate.
+     * 
+     * @param tile
+     * @param bucket
+     */
+    private void remove(int tile, int bucket) {
+        
+        int next = nextTiles[tile];
+        int prev = prevTiles[tile];
+        
+        if (prev == NONE) {
+            bucketHeads[bucket] = next;
+        } else {
+            nextTiles[prev] = next;
+        }
+        if (next != NONE) {
+            prevTiles[next] = prev;
+        }
+        numOpenTiles--;
+    }
+
+    /**
+     * Gets the index of a tile in the search arrays.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return
+     */
+    private int getIndex(int x, int z) {
+        return (x + 1) * stride + z + 1;
+    }
+
+    /**
+     * Gets the directions in which a tile can be left, working them out if
+     * they are not known.
+     * 
+     * @param tile
+     * @return Flags as returned by {@link #findExits}.
+     */
+    private int getExits(int tile) {
+        
+        int version = world.getCollisionVersion();
+        if (exitsVersion[tile] != version) {
+            exits[tile] = (short) findExits(
+                    tile / stride - 1, tile % stride - 1);
+            exitsVersion[tile] = version;
+        }
+        
+        return exits[tile];
+    }
+
+    /**
+     * Gets the direction with the given change in each axis.
+     * 
+     * @param dx Change in x (-1, 0 or 1).
+     * @param dz Change in z (-1, 0 or 1).
+     * @return Index into {@link #DIRECTION_X} and {@link #DIRECTION_Z}.
+     */
+    private static int getDirection(int dx, int dz) {
+        return DIRECTIONS[(dx + 1) * 3 + dz + 1];
+    }
+
+    /**
+     * Determines in which directions a tile can be left.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return Bit <code>i</code> is set if a step can be taken in direction
+     * <code>i</code>; {@link #BLOCKED} is set if the tile cannot be entered.
+     */
+    private int findExits(int x, int z) {
+        
+        if (!world.containsTileRelativeToOrigin(x, z)) {
+            // Border tile
+            return BLOCKED;
+        }
+        
+        int tileExits = isBlocked(x, z) ? BLOCKED : 0;
+        
+        for (int i = 0; i < DIRECTION_X.length; i++) {
+            if (canStep(x, z, DIRECTION_X[i], DIRECTION_Z[i])) {
+                tileExits |= 1 << i;
+            }
+        }
+        
+        return tileExits;
+    }
+
+    /**
+     * Determines if a single step can be taken.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @param dx Change in x (-1, 0 or 1).
+     * @param dz Change in z (-1, 0 or 1).
+     * @return
+     */
+    public boolean canStep(int x, int z, int dx, int dz) {
+        
+        int toX = x + dx;
+        int toZ = z + dz;
+        
+        if (!world.containsTileRelativeToOrigin(toX, toZ) ||
+                isBlocked(toX, toZ)) {
+            return false;
+        }
+        
+        // Walls are stored on the tile with the greater co-ordinate
+        if (dz == 0) {
+            return (world.getCollisionFlags(Math.max(x, toX), z) &
+                    Collision.WALL_MIN_X) == 0;
+        }
+        
+        if (dx == 0) {
+            return (world.getCollisionFlags(x, Math.max(z, toZ)) &
+                    Collision.WALL_MIN_Z) == 0;
+        }
+        
+        // Both ways around the corner must be clear
+        return canStep(x, z, dx, 0) && canStep(toX, z, 0, dz) &&
+                canStep(x, z, 0, dz) && canStep(x, toZ, dx, 0);
+    }
+
+    /**
+     * Determines if a tile cannot be entered.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return
+     */
+    public boolean isBlocked(int x, int z) {
+        return (world.getCollisionFlags(x, z) & Collision.BLOCKED) != 0;
+    }
+
+}
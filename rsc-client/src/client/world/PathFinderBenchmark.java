@@ -0,0 +1,190 @@
+package client.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import client.entityhandling.defs.DoorDef;
+import client.entityhandling.defs.ElevationDef;
+import client.entityhandling.defs.GameObjectDef;
+import client.entityhandling.defs.TileDef;
+import client.model.Mob;
+import client.res.Resources;
+import client.scene.Scene;
+import client.states.Game;
+
+/**
+ * Development tool that times the {@link PathFinder} over long routes.
+ * 
+ * <p>A window of the given size is loaded around the spawn point, and routes
+ * are found between random pairs of reachable tiles at least half a window
+ * apart, so that most of them cross several Sectors. Routes with more
+ * waypoints than a Mob can hold are followed to the end by searching again
+ * from the last waypoint, in the same way as the Game.
+ * 
+ * <p>Usage: <code>PathFinderBenchmark [sectors] [routes] [seed]</code>, run
+ * from the directory containing <code>res/</code>.
+ * 
+ * @author Dan Bryce
+ */
+public class PathFinderBenchmark {
+
+    private static final String LANDSCAPE_FILENAME = "Landscape.rscd";
+
+    private static final int DEFAULT_SECTORS = World.MAX_SECTORS_X;
+
+    private static final int DEFAULT_ROUTES = 2000;
+
+    private static final long DEFAULT_SEED = 1;
+
+    /**
+     * Number of times to find every route before timing them, so that the
+     * JIT compiler has done its work.
+     */
+    private static final int WARM_UP_PASSES = 3;
+
+    public static void main(String[] args) throws IOException {
+        
+        int sectors = args.length > 0 ?
+                Integer.parseInt(args[0]) : DEFAULT_SECTORS;
+        int numRoutes = args.length > 1 ?
+                Integer.parseInt(args[1]) : DEFAULT_ROUTES;
+        long seed = args.length > 2 ?
+                Long.parseLong(args[2]) : DEFAULT_SEED;
+        
+        Resources.tiles     = (TileDef[])       Resources.loadData("Tiles.rscd");
+        Resources.doors     = (DoorDef[])       Resources.loadData("Doors.rscd");
+        Resources.elevation = (ElevationDef[])  Resources.loadData("Elevation.rscd");
+        Resources.objects   = (GameObjectDef[]) Resources.loadData("Objects.rscd");
+        Resources.tileArchive = new ZipFile(new File(
+                Resources.DATA_DIR + LANDSCAPE_FILENAME));
+        
+        World world = new World(new Scene(), sectors, sectors);
+        new WorldLoader(world).loadSector(
+                Game.SPAWN_SECTOR_X, Game.SPAWN_SECTOR_Z);
+        PathFinder pathFinder = new PathFinder(world);
+        
+        int[][] routes = findRoutes(world, pathFinder, numRoutes, seed);
+        
+        // Each search takes the Mob at least one tile closer
+        long[] times = new long[world.getNumTilesX() * world.getNumTilesZ()];
+        
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            for (int[] route : routes) {
+                walk(pathFinder, route, times);
+            }
+        }
+        
+        // Time the search for each whole route, then any searches needed to
+        // follow the rest of it
+        long[] firstSearchTimes = new long[routes.length];
+        long[] laterSearchTimes = new long[routes.length];
+        int numLaterSearches = 0;
+        
+        for (int i = 0; i < routes.length; i++) {
+            int numSearches = walk(pathFinder, routes[i], times);
+            firstSearchTimes[i] = times[0];
+            for (int j = 1; j < numSearches; j++) {
+                laterSearchTimes[i] += times[j];
+            }
+            numLaterSearches += numSearches - 1;
+        }
+        
+        Arrays.sort(firstSearchTimes);
+        long totalFirstSearchTime = 0;
+        long totalLaterSearchTime = 0;
+        for (int i = 0; i < routes.length; i++) {
+            totalFirstSearchTime += firstSearchTimes[i];
+            totalLaterSearchTime += laterSearchTimes[i];
+        }
+        
+        System.out.println("Window: " + world.getNumTilesX() + "x" +
+                world.getNumTilesZ() + " tiles");
+        System.out.println("Routes: " + routes.length);
+        System.out.println("Whole route search: average " +
+                totalFirstSearchTime / routes.length / 1000 + "us, median " +
+                firstSearchTimes[routes.length / 2] / 1000 + "us, longest " +
+                firstSearchTimes[routes.length - 1] / 1000 + "us");
+        System.out.println("Searches to follow truncated routes: " +
+                numLaterSearches + ", taking " +
+                totalLaterSearchTime / 1000000 + "ms in all");
+    }
+
+    /**
+     * Picks random routes between reachable tiles.
+     * 
+     * @param world
+     * @param pathFinder
+     * @param numRoutes
+     * @param seed
+     * @return Start and end co-ordinates of each route, relative to the
+     * World origin.
+     */
+    private static int[][] findRoutes(World world, PathFinder pathFinder,
+            int numRoutes, long seed) {
+        
+        Random random = new Random(seed);
+        int numTilesX = world.getNumTilesX();
+        int numTilesZ = world.getNumTilesZ();
+        int spawnX = Game.SPAWN_TILE_X - World.START_X - world.getOriginX();
+        int spawnZ = Game.SPAWN_TILE_Z - World.START_Z - world.getOriginZ();
+        Mob mob = new Mob();
+        
+        int[][] routes = new int[numRoutes][];
+        for (int i = 0; i < numRoutes; i++) {
+            int[] route;
+            do {
+                route = new int[] {
+                        random.nextInt(numTilesX), random.nextInt(numTilesZ),
+                        random.nextInt(numTilesX), random.nextInt(numTilesZ) };
+            } while (Math.max(Math.abs(route[0] - route[2]),
+                    Math.abs(route[1] - route[3])) < numTilesX / 2 ||
+                    pathFinder.findPath(spawnX, spawnZ, route[0], route[1],
+                            mob.waypointsX, mob.waypointsZ) < 0 ||
+                    pathFinder.findPath(spawnX, spawnZ, route[2], route[3],
+                            mob.waypointsX, mob.waypointsZ) < 0);
+            routes[i] = route;
+        }
+        
+        return routes;
+    }
+
+    /**
+     * Follows a route from start to end.
+     * 
+     * @param pathFinder
+     * @param route
+     * @param times Array to receive the time taken by each search, in
+     * nanoseconds.
+     * @return Number of searches needed.
+     */
+    private static int walk(PathFinder pathFinder, int[] route,
+            long[] times) {
+        
+        Mob mob = new Mob();
+        int[] waypointsX = mob.waypointsX;
+        int[] waypointsZ = mob.waypointsZ;
+        int x = route[0];
+        int z = route[1];
+        int numSearches = 0;
+        
+        while (x != route[2] || z != route[3]) {
+            long start = System.nanoTime();
+            int numWaypoints = pathFinder.findPath(
+                    x, z, route[2], route[3], waypointsX, waypointsZ);
+            times[numSearches] = System.nanoTime() - start;
+            numSearches++;
+            if (numWaypoints <= 0) {
+                throw new IllegalStateException("Route was lost: " +
+                        x + "," + z + " to " + route[2] + "," + route[3]);
+            }
+            x = waypointsX[numWaypoints - 1];
+            z = waypointsZ[numWaypoints - 1];
+        }
+        
+        return numSearches;
+    }
+
+}
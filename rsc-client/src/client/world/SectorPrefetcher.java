@@ -0,0 +1,418 @@
+package client.world;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import client.model.Mob;
+import client.model.Sector;
+import client.res.Resources;
+
+/**
+ * Builds the Sectors that the player is heading towards, before they are
+ * needed.
+ * 
+ * <p>Each tick, the player's position is predicted from the end of their
+ * path or, failing that, from the direction in which they are moving. If this
+ * would take them far enough to load a new window, any Sectors of that window
+ * that are neither loaded nor cached are built on a low-priority background
+ * thread. When the window is eventually loaded, these Sectors are placed
+ * straight into the World instead of being built then.
+ * 
+ * <p>The decoded tiles of the ground floor and both upper storeys are also
+ * read into the SectorCache, so that climbing a ladder or staircase after
+ * arriving does not have to wait for the landscape archive.
+ * 
+ * <p>Prefetched Sectors are kept within a memory budget, discarding the
+ * oldest first.
+ * 
+ * <p>Apart from its background thread, this should only be used from the
+ * game thread.
+ * 
+ * @author Dan Bryce
+ */
+public class SectorPrefetcher {
+
+    /**
+     * Distance ahead at which to predict the position of a player who is not
+     * following a path, in tiles.
+     */
+    private static final int LOOKAHEAD_TILES = 16;
+
+    /**
+     * Maximum memory to be used by prefetched Sectors, in bytes.
+     */
+    private static final int MEMORY_BUDGET = 8 * 1024 * 1024;
+
+    /**
+     * Number of layers whose tiles are read ahead.
+     */
+    private static final int NUM_PREFETCHED_LAYERS = 3;
+
+    private World world;
+
+    private WorldLoader worldLoader;
+
+    /**
+     * Thread on which Sectors are prefetched.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Loader used by the background thread.
+     */
+    private WorldLoader builder;
+
+    /**
+     * Sectors that have been built, from oldest to newest.
+     */
+    private LinkedHashMap<String, LoadedSector> sectors =
+            new LinkedHashMap<>();
+
+    /**
+     * Sectors waiting to be built.
+     */
+    private Set<String> queued = new HashSet<>();
+
+    /**
+     * Sectors needed by the most recent prediction.
+     * 
+     * <p>Queued Sectors that are no longer wanted are skipped.
+     */
+    private Set<String> wanted = new HashSet<>();
+
+    /**
+     * Estimated memory used by the prefetched Sectors, in bytes.
+     */
+    private int memoryUsage;
+
+    /**
+     * Absolute position of the player at the previous tick, in world units.
+     */
+    private int prevX;
+    private int prevZ;
+    private boolean hasPrevPosition;
+
+    /**
+     * Windows requested by the most recent prediction.
+     */
+    private int targetX;
+    private int targetZ;
+    private int targetLayer = -1;
+
+    private int requests;
+    private int built;
+    private int hits;
+    private int misses;
+    private int wasted;
+
+    public SectorPrefetcher(World world, WorldLoader worldLoader) {
+        this.world = world;
+        this.worldLoader = worldLoader;
+    }
+
+    /**
+     * Predicts where the given Mob is heading, and requests the Sectors that
+     * will be needed when it gets there.
+     * 
+     * <p>This should be called once per tick, after the Mob has moved.
+     * 
+     * @param mob
+     */
+    public void update(Mob mob) {
+
+        // Track the absolute position, since the origin moves with the window
+        int offsetX = world.getFirstSectorX() * Sector.WIDTH * World.TILE_WIDTH;
+        int offsetZ = world.getFirstSectorZ() * Sector.DEPTH * World.TILE_DEPTH;
+        int x = offsetX + mob.x;
+        int z = offsetZ + mob.z;
+        int directionX = hasPrevPosition ? Integer.signum(x - prevX) : 0;
+        int directionZ = hasPrevPosition ? Integer.signum(z - prevZ) : 0;
+        prevX = x;
+        prevZ = z;
+        hasPrevPosition = true;
+
+        int predictedX;
+        int predictedZ;
+        if (mob.movingStep < mob.waypointCurrent) {
+            // Head for the end of the path
+            predictedX = mob.waypointsX[mob.waypointCurrent - 1];
+            predictedZ = mob.waypointsZ[mob.waypointCurrent - 1];
+        } else {
+            predictedX = mob.x +
+                    directionX * LOOKAHEAD_TILES * World.TILE_WIDTH;
+            predictedZ = mob.z +
+                    directionZ * LOOKAHEAD_TILES * World.TILE_DEPTH;
+        }
+
+        // Find the window that would be loaded, in the same way as the Game
+        int dx = 0;
+        int dz = 0;
+        if (predictedX < world.getLoadMinX() * World.TILE_WIDTH) {
+            dx = -1;
+        } else if (predictedX > world.getLoadMaxX() * World.TILE_WIDTH) {
+            dx = 1;
+        }
+        if (predictedZ < world.getLoadMinZ() * World.TILE_DEPTH) {
+            dz = -1;
+        } else if (predictedZ > world.getLoadMaxZ() * World.TILE_DEPTH) {
+            dz = 1;
+        }
+
+        int newTargetX = world.getSectorX() + dx;
+        int newTargetZ = world.getSectorZ() + dz;
+        int layer = world.getCurrentLayer();
+        if (newTargetX == targetX && newTargetZ == targetZ &&
+                layer == targetLayer) {
+            // Already requested
+            return;
+        }
+        targetX = newTargetX;
+        targetZ = newTargetZ;
+        targetLayer = layer;
+
+        synchronized (this) {
+            wanted.clear();
+        }
+
+        if (dx == 0 && dz == 0) {
+            return;
+        }
+
+        // The x-axis is loaded first, so a diagonal move passes through an
+        // intermediate window
+        if (dx != 0 && dz != 0) {
+            worldLoader.prefetchWindow(newTargetX, world.getSectorZ());
+        }
+        worldLoader.prefetchWindow(newTargetX, newTargetZ);
+    }
+
+    /**
+     * Queues a Sector to be built in the background, if it has not been
+     * already.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param detailed
+     * @param mergeFaces
+     */
+    synchronized void request(int sectorX, int sectorZ, int layer,
+            boolean detailed, boolean mergeFaces) {
+
+        String key = getKey(sectorX, sectorZ, layer);
+        wanted.add(key);
+
+        LoadedSector sector = sectors.get(key);
+        if (sector != null && (sector.isDetailed() || !detailed)) {
+            return;
+        }
+        if (!queued.add(key)) {
+            return;
+        }
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Sector Prefetcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            builder = new WorldLoader(null);
+        }
+
+        requests++;
+        executor.submit(() -> prefetch(
+                sectorX, sectorZ, layer, detailed, mergeFaces));
+    }
+
+    /**
+     * Builds a Sector on the background thread.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param detailed
+     * @param mergeFaces
+     */
+    private void prefetch(int sectorX, int sectorZ, int layer,
+            boolean detailed, boolean mergeFaces) {
+
+        String key = getKey(sectorX, sectorZ, layer);
+
+        synchronized (this) {
+            if (!wanted.contains(key)) {
+                // Player has changed direction
+                queued.remove(key);
+                return;
+            }
+        }
+
+        try {
+            for (int i = 0; i < NUM_PREFETCHED_LAYERS; i++) {
+                Resources.loadSector(sectorX, sectorZ, i);
+            }
+
+            builder.setMergeFaces(mergeFaces);
+            LoadedSector sector =
+                    builder.buildSector(sectorX, sectorZ, layer, detailed);
+            store(key, sector);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                queued.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Keeps a newly-built Sector, discarding the oldest Sectors if the memory
+     * budget is exceeded.
+     * 
+     * @param key
+     * @param sector
+     */
+    private synchronized void store(String key, LoadedSector sector) {
+
+        built++;
+
+        LoadedSector prevSector = sectors.put(key, sector);
+        if (prevSector != null) {
+            discard(prevSector);
+        }
+        memoryUsage += sector.getMemoryUsage();
+
+        Iterator<LoadedSector> it = sectors.values().iterator();
+        while (memoryUsage > MEMORY_BUDGET && it.hasNext()) {
+            LoadedSector eldest = it.next();
+            if (eldest == sector) {
+                break;
+            }
+            it.remove();
+            discard(eldest);
+            wasted++;
+        }
+    }
+
+    private void discard(LoadedSector sector) {
+        memoryUsage -= sector.getMemoryUsage();
+        sector.releaseModels();
+    }
+
+    /**
+     * Takes a prefetched Sector, if there is one.
+     * 
+     * <p>The Sector is handed over to the caller, and will not be returned
+     * again.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param detailed Whether the full-detail models are required.
+     * @return The prefetched Sector, or null if it must be built.
+     */
+    synchronized LoadedSector take(int sectorX, int sectorZ, int layer,
+            boolean detailed) {
+
+        String key = getKey(sectorX, sectorZ, layer);
+        LoadedSector sector = sectors.get(key);
+
+        if (sector == null || detailed && !sector.isDetailed()) {
+            misses++;
+            return null;
+        }
+
+        sectors.remove(key);
+        memoryUsage -= sector.getMemoryUsage();
+        hits++;
+        return sector;
+    }
+
+    private static String getKey(int sectorX, int sectorZ, int layer) {
+        return sectorX + "," + sectorZ + "," + layer;
+    }
+
+    /**
+     * Discards all prefetched Sectors.
+     */
+    public synchronized void clear() {
+        for (LoadedSector sector : sectors.values()) {
+            discard(sector);
+        }
+        sectors.clear();
+        wanted.clear();
+        targetLayer = -1;
+    }
+
+    public synchronized int size() {
+        return sectors.size();
+    }
+
+    public synchronized int getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * Gets the number of Sectors queued to be built.
+     * 
+     * @return
+     */
+    public synchronized int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the number of Sectors built in advance.
+     * 
+     * @return
+     */
+    public synchronized int getBuilt() {
+        return built;
+    }
+
+    /**
+     * Gets the number of Sectors needed by a load that had been built in
+     * advance.
+     * 
+     * @return
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of Sectors needed by a load that had to be built there
+     * and then.
+     * 
+     * @return
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of prefetched Sectors that were discarded to stay
+     * within the memory budget, without ever being used.
+     * 
+     * @return
+     */
+    public synchronized int getWasted() {
+        return wasted;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SectorPrefetcher [sectors=" + sectors.size() +
+                ", memoryUsage=" + memoryUsage +
+                ", requests=" + requests +
+                ", built=" + built +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", wasted=" + wasted + "]";
+    }
+
+}
@@ -0,0 +1,171 @@
+package client.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import client.entityhandling.defs.DoorDef;
+import client.entityhandling.defs.ElevationDef;
+import client.entityhandling.defs.GameObjectDef;
+import client.entityhandling.defs.TileDef;
+import client.res.Resources;
+import client.scene.ModelPool;
+import client.scene.Scene;
+import client.states.Game;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Development tool that walks across the world, loading a new window at each
+ * step, and reports the garbage collections that took place.
+ * 
+ * <p>The collections are read from a Flight Recording taken during the walk,
+ * so the results do not depend on the GC logging options of the JVM. The walk
+ * is a random one, but always the same for a given seed.
+ * 
+ * <p>Usage: <code>SectorWalkBenchmark [steps] [seed]</code>, run from the
+ * directory containing <code>res/</code>.
+ * 
+ * @author Dan Bryce
+ */
+public class SectorWalkBenchmark {
+
+    private static final String LANDSCAPE_FILENAME = "Landscape.rscd";
+
+    private static final int DEFAULT_STEPS = 200;
+
+    private static final long DEFAULT_SEED = 7;
+
+    /**
+     * Bounds of the walk, in Sector co-ordinates.
+     * 
+     * <p>This keeps the walk within the mainland.
+     */
+    private static final int MIN_SECTOR_X = 46;
+    private static final int MAX_SECTOR_X = 56;
+    private static final int MIN_SECTOR_Z = 46;
+    private static final int MAX_SECTOR_Z = 56;
+
+    public static void main(String[] args) throws IOException {
+        
+        int steps = args.length > 0 ?
+                Integer.parseInt(args[0]) : DEFAULT_STEPS;
+        long seed = args.length > 1 ?
+                Long.parseLong(args[1]) : DEFAULT_SEED;
+        
+        Resources.tiles     = (TileDef[])       Resources.loadData("Tiles.rscd");
+        Resources.doors     = (DoorDef[])       Resources.loadData("Doors.rscd");
+        Resources.elevation = (ElevationDef[])  Resources.loadData("Elevation.rscd");
+        Resources.objects   = (GameObjectDef[]) Resources.loadData("Objects.rscd");
+        Resources.tileArchive = new ZipFile(new File(
+                Resources.DATA_DIR + LANDSCAPE_FILENAME));
+        
+        World world = new World(new Scene());
+        WorldLoader loader = new WorldLoader(world);
+        
+        // Warm up, so that class loading and JIT compilation are not counted
+        walk(loader, steps, seed + 1);
+        
+        Path file = Files.createTempFile("walk", ".jfr");
+        long start;
+        long end;
+        
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.YoungGarbageCollection");
+            recording.enable("jdk.OldGarbageCollection");
+            recording.enable("jdk.GarbageCollection");
+            recording.start();
+            
+            start = System.currentTimeMillis();
+            walk(loader, steps, seed);
+            end = System.currentTimeMillis();
+            
+            recording.stop();
+            recording.dump(file);
+        }
+        
+        report(file);
+        Files.delete(file);
+        
+        System.out.println("Walked " + steps + " steps in " +
+                (end - start) + "ms");
+        System.out.println("Model pool: " + ModelPool.getHits() + " hits, " +
+                ModelPool.getMisses() + " misses");
+    }
+
+    /**
+     * Loads a window at each step of a random walk.
+     * 
+     * @param loader
+     * @param steps
+     * @param seed
+     */
+    private static void walk(WorldLoader loader, int steps, long seed) {
+        
+        Random random = new Random(seed);
+        int sectorX = Game.SPAWN_SECTOR_X;
+        int sectorZ = Game.SPAWN_SECTOR_Z;
+        
+        for (int i = 0; i < steps; i++) {
+            int direction = random.nextInt(4);
+            if (direction == 0) {
+                sectorX++;
+            } else if (direction == 1) {
+                sectorX--;
+            } else if (direction == 2) {
+                sectorZ++;
+            } else {
+                sectorZ--;
+            }
+            sectorX = Math.max(MIN_SECTOR_X, Math.min(MAX_SECTOR_X, sectorX));
+            sectorZ = Math.max(MIN_SECTOR_Z, Math.min(MAX_SECTOR_Z, sectorZ));
+            loader.loadSector(sectorX, sectorZ);
+        }
+    }
+
+    /**
+     * Prints a summary of the garbage collections in a recording.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    private static void report(Path file) throws IOException {
+        
+        int youngCollections = 0;
+        int oldCollections = 0;
+        Duration totalPause = Duration.ZERO;
+        Duration longestPause = Duration.ZERO;
+        String collector = "none";
+        
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String type = event.getEventType().getName();
+            
+            if (type.equals("jdk.YoungGarbageCollection")) {
+                youngCollections++;
+            
+            } else if (type.equals("jdk.OldGarbageCollection")) {
+                oldCollections++;
+            
+            } else if (type.equals("jdk.GarbageCollection")) {
+                collector = event.getString("name");
+                Duration pause = event.getDuration("sumOfPauses");
+                totalPause = totalPause.plus(pause);
+                if (pause.compareTo(longestPause) > 0) {
+                    longestPause = pause;
+                }
+            }
+        }
+        
+        System.out.println("Collector: " + collector);
+        System.out.println("Young collections: " + youngCollections);
+        System.out.println("Old collections: " + oldCollections);
+        System.out.println("Total pause: " + totalPause.toMillis() + "ms");
+        System.out.println("Longest pause: " + longestPause.toMillis() + "ms");
+    }
+
+}
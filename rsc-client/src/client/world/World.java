@@ -1,6 +1,7 @@
 package client.world;
 
 import client.model.Sector;
+import client.model.TileGrid;
 import client.scene.Model;
 import client.scene.Scene;
 
@@ -35,39 +36,64 @@ public class World {
     public static final int TILE_DEPTH = 128;
     
     /**
-     * Number of Sectors loaded in the x-axis.
+     * Default number of Sectors loaded in the x-axis.
      */
-    private static final int SECTORS_X = 2;
+    public static final int DEFAULT_SECTORS_X = 2;
 
     /**
-     * Number of Sectors loaded in the z-axis.
+     * Default number of Sectors loaded in the z-axis.
      */
-    private static final int SECTORS_Z = 2;
+    public static final int DEFAULT_SECTORS_Z = 2;
 
     /**
-     * Total number of Sectors loaded at a time.
+     * Maximum number of Sectors that can be loaded in the x-axis.
      */
-    private static final int NUM_SECTORS = SECTORS_X * SECTORS_Z;
+    public static final int MAX_SECTORS_X = 8;
 
     /**
-     * The number of loaded Tiles in the x-axis.
+     * Maximum number of Sectors that can be loaded in the z-axis.
      */
-    public static final int NUM_TILES_X = SECTORS_X * Sector.WIDTH;
-    
+    public static final int MAX_SECTORS_Z = 8;
+
     /**
-     * The number of loaded Tiles in the y-axis.
+     * Width of a landscape chunk, in tiles.
      */
-    public static final int NUM_TILES_Z = SECTORS_Z * Sector.DEPTH;
-    
+    public static final int CHUNK_WIDTH = 12;
+
     /**
-     * Number of faces present in the loaded terrain.
+     * Depth of a landscape chunk, in tiles.
      */
-    public static final int NUM_TERRAIN_FACES = NUM_SECTORS * Sector.NUM_FACES;
-    
+    public static final int CHUNK_DEPTH = 12;
+
+    /**
+     * Distance from the edge of the detailed area at which the next Sector is
+     * loaded, in tiles.
+     */
+    private static final int LOAD_MARGIN = 16;
+
+    /**
+     * Number of tiles around a changed tile whose models may be affected by
+     * the change.
+     */
+    private static final int DIRTY_MARGIN = 2;
+
     /**
      * Number of layers in the world.
      */
-    private static final int NUM_LAYERS = 4;
+    public static final int NUM_LAYERS = 4;
+
+    /*
+     * Wall orientations, as used by setWall.
+     */
+    public static final int WALL_VERTICAL = 0;
+    public static final int WALL_HORIZONTAL = 1;
+    public static final int WALL_DIAGONAL = 2;
+    public static final int WALL_DIAGONAL_FLIPPED = 3;
+
+    /**
+     * Offset added to the tile index to give the faceTag of a ground face.
+     */
+    public static final int GROUND_FACE_TAG = 200000;
 
     /**
      * The Scene that should hold the loaded world models.
@@ -75,34 +101,67 @@ public class World {
     private Scene scene;
 
     /**
-     * Tile position corresponding to a given face of the terrain model.
-     * 
-     * <p>The index is given by the faceTag of the selected face.
+     * Number of Sectors loaded in the x-axis.
      */
-    private int[] tileXForFace = new int[NUM_TERRAIN_FACES];
-    private int[] tileZForFace = new int[NUM_TERRAIN_FACES];
+    private int sectorsX;
 
     /**
-     * Currently-loaded Sectors.
-     * 
-     * <p>When we load sector (x, z) we end up with the following:
+     * Number of Sectors loaded in the z-axis.
+     */
+    private int sectorsZ;
+
+    /**
+     * The number of loaded Tiles in the x-axis.
+     */
+    private int numTilesX;
+
+    /**
+     * The number of loaded Tiles in the z-axis.
+     */
+    private int numTilesZ;
+
+    /**
+     * Number of landscape chunks in the x-axis.
+     */
+    private int numChunksX;
+
+    /**
+     * Total number of landscape chunks.
+     */
+    private int numChunks;
+
+    /**
+     * Bounds of the area within which the player can move without loading
+     * the next Sector, in tiles relative to the World origin.
+     */
+    private int loadMinX;
+    private int loadMinZ;
+    private int loadMaxX;
+    private int loadMaxZ;
+
+    /**
+     * Currently-loaded Sectors, arranged as a ring buffer.
      * 
-     * <pre>
-     *  sectors[0] = (x - 1, z - 1)
-     *  sectors[1] = (x, z - 1)
-     *  sectors[2] = (x - 1, z)
-     *  sectors[3] = (x, z)
-     * </pre>
+     * <p>Each Sector occupies the slot given by {@link #getSlot}, which
+     * depends only on its absolute co-ordinates. This means a Sector never
+     * changes slot while it remains loaded, and moving the window only
+     * replaces the slots of Sectors that have left it.
      */
-    private Sector[] sectors = new Sector[NUM_SECTORS];
+    private LoadedSector[] loadedSectors =
+            new LoadedSector[MAX_SECTORS_X * MAX_SECTORS_Z];
 
-    private Model[] landscapeModels = new Model[64];
-    
-    private Model[][] wallModels = new Model[NUM_LAYERS][64];
-    
-    private Model[][] roofModels = new Model[NUM_LAYERS][64];
-    
-    private int[][] elevation = new int[NUM_TILES_X][NUM_TILES_Z];
+    /**
+     * Tiles of the current layer across the whole window, indexed relative
+     * to the World origin.
+     */
+    private TileGrid tiles;
+
+    /**
+     * Number that changes whenever the collision flags of the window change.
+     * 
+     * <p>This starts at 1, so that it never matches a zero-filled array.
+     */
+    private int collisionVersion = 1;
 
     /**
      * The first tile in the World that is currently loaded, in the x-axis.
@@ -132,69 +191,307 @@ public class World {
     private Door[] doors = new Door[500];
 
     public World(Scene scene) {
-        this.scene = scene;
+        this(scene, DEFAULT_SECTORS_X, DEFAULT_SECTORS_Z);
     }
 
-    public void clear() {
-        scene.dispose();
-        for (int i = 0; i < 64; i++) {
-            landscapeModels[i] = null;
-            for (int k = 0; k < 4; k++) {
-                roofModels[k][i] = null;
-            }
+    /**
+     * Creates a World that loads the given number of Sectors at a time.
+     * 
+     * <p>If the window is at least 3 Sectors across, its outermost ring of
+     * Sectors is drawn using simplified terrain only.
+     * 
+     * @param scene
+     * @param sectorsX
+     * @param sectorsZ
+     */
+    public World(Scene scene, int sectorsX, int sectorsZ) {
+        
+        if (sectorsX < 1 || sectorsX > MAX_SECTORS_X ||
+                sectorsZ < 1 || sectorsZ > MAX_SECTORS_Z) {
+            throw new IllegalArgumentException(
+                    "Invalid window size: " + sectorsX + "x" + sectorsZ);
         }
-        System.gc();
+        
+        this.scene = scene;
+        this.sectorsX = sectorsX;
+        this.sectorsZ = sectorsZ;
+        
+        numTilesX = sectorsX * Sector.WIDTH;
+        numTilesZ = sectorsZ * Sector.DEPTH;
+        numChunksX = numTilesX / CHUNK_WIDTH;
+        numChunks = numChunksX * (numTilesZ / CHUNK_DEPTH);
+        tiles = new TileGrid(numTilesX, numTilesZ);
+        
+        loadMinX = getLoadMin(sectorsX, Sector.WIDTH);
+        loadMinZ = getLoadMin(sectorsZ, Sector.DEPTH);
+        loadMaxX = numTilesX - loadMinX;
+        loadMaxZ = numTilesZ - loadMinZ;
     }
 
-    public void setTilePosForFace(int faceId, int x, int z) {
-        this.tileXForFace[faceId] = x;
-        this.tileZForFace[faceId] = z;
+    /**
+     * Gets the distance from the edge of the window at which the next Sector
+     * should be loaded.
+     * 
+     * <p>The player should always remain within the detailed area, but must
+     * not end up beyond the opposite bound once the window has moved.
+     * 
+     * @param numSectors Number of Sectors loaded in this axis.
+     * @param sectorSize Size of a Sector in this axis, in tiles.
+     * @return Distance in tiles.
+     */
+    private static int getLoadMin(int numSectors, int sectorSize) {
+        int detailMin = getFirstDetailedSector(numSectors) * sectorSize;
+        int detailSize = numSectors * sectorSize - detailMin * 2;
+        return detailMin + Math.max(0,
+                Math.min(LOAD_MARGIN, (detailSize - sectorSize) / 2));
     }
-    
-    public int getTileXForFace(int faceId) {
-        return tileXForFace[faceId];
+
+    /**
+     * Gets the index of the first Sector within the window that is drawn in
+     * full detail.
+     * 
+     * @param numSectors Number of Sectors loaded in this axis.
+     * @return
+     */
+    private static int getFirstDetailedSector(int numSectors) {
+        return numSectors >= 3 ? 1 : 0;
     }
 
-    public int getTileZForFace(int faceId) {
-        return tileZForFace[faceId];
+    /**
+     * Determines whether the Sector at the given position within the window
+     * should be drawn in full detail.
+     * 
+     * @param x Index of the Sector within the window.
+     * @param z Index of the Sector within the window.
+     * @return
+     */
+    public boolean isDetailed(int x, int z) {
+        int firstX = getFirstDetailedSector(sectorsX);
+        int firstZ = getFirstDetailedSector(sectorsZ);
+        return x >= firstX && x < sectorsX - firstX &&
+                z >= firstZ && z < sectorsZ - firstZ;
     }
 
-    public void setLandscapeModels(Model[] landscapeModels) {
-        this.landscapeModels = landscapeModels;
+    public void clear() {
 
-        for (int i = 0; i < 64; i++) {
-            scene.addModel(landscapeModels[i]);
+        // Sectors still in the Scene would never release their models
+        for (LoadedSector loadedSector : loadedSectors) {
+            if (loadedSector != null) {
+                loadedSector.removeFromScene(scene);
+            }
         }
+
+        scene.dispose();
+        loadedSectors = new LoadedSector[MAX_SECTORS_X * MAX_SECTORS_Z];
+        tiles.clear();
+        collisionChanged();
     }
 
-    public void setElevation(int x, int z, int newElevation) {
-        elevation[x][z] = newElevation;
+    /**
+     * Gets the ring buffer slot used by the given Sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @return
+     */
+    public static int getSlot(int sectorX, int sectorZ) {
+        return Math.floorMod(sectorX, MAX_SECTORS_X) +
+                Math.floorMod(sectorZ, MAX_SECTORS_Z) * MAX_SECTORS_X;
     }
 
-    public int getElevation(int x, int z) {
-        return elevation[x][z];
+    /**
+     * Gets the faceTag for a ground face of the given Sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param x Tile co-ordinate relative to the Sector.
+     * @param z Tile co-ordinate relative to the Sector.
+     * @return
+     */
+    public static int getGroundFaceTag(int sectorX, int sectorZ, int x, int z) {
+        return getGroundFaceTag(sectorX, sectorZ, x, z, 1, 1);
     }
 
-    public int getGroundElevation(int x, int z) {
+    /**
+     * Gets the faceTag for a ground face of the given Sector that covers a
+     * rectangle of tiles.
+     * 
+     * <p>The size of the rectangle is packed below the tile position, so a
+     * single tile and a merged face can be decoded in the same way.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param x Tile co-ordinate of the first tile, relative to the Sector.
+     * @param z Tile co-ordinate of the first tile, relative to the Sector.
+     * @param width Number of tiles covered in the x-axis, up to
+     * {@link #CHUNK_WIDTH}.
+     * @param depth Number of tiles covered in the z-axis, up to
+     * {@link #CHUNK_DEPTH}.
+     * @return
+     */
+    public static int getGroundFaceTag(int sectorX, int sectorZ,
+            int x, int z, int width, int depth) {
+        int tile = getSlot(sectorX, sectorZ) * Sector.NUM_TILES +
+                x * Sector.DEPTH + z;
+        return GROUND_FACE_TAG +
+                (tile * CHUNK_WIDTH + width - 1) * CHUNK_DEPTH + depth - 1;
+    }
+
+    /**
+     * Moves the window to the given sector and fills it with the given
+     * Sectors.
+     * 
+     * <p>Sectors that were already loaded are moved to their new position,
+     * those that have left the window are removed from the Scene, and new
+     * ones are added to it.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param newSectors Sectors to load, indexed by
+     * <code>x + z * sectorsX</code> relative to the first Sector of the
+     * window.
+     */
+    public void setLoadedSectors(int sectorX, int sectorZ,
+            LoadedSector[] newSectors) {
         
-        if (!containsTileRelativeToOrigin(x, z)) {
-            return 0;
+        LoadedSector[] prevSectors = loadedSectors;
+        loadedSectors = new LoadedSector[MAX_SECTORS_X * MAX_SECTORS_Z];
+        
+        setCurrentSector(sectorX, sectorZ);
+        
+        for (int z = 0; z < sectorsZ; z++) {
+            for (int x = 0; x < sectorsX; x++) {
+                
+                LoadedSector loadedSector = newSectors[x + z * sectorsX];
+                boolean detailed = isDetailed(x, z);
+                int slot = getSlot(
+                        loadedSector.getSectorX(),
+                        loadedSector.getSectorZ());
+                boolean moved = loadedSector.moveTo(
+                        x * Sector.WIDTH * TILE_WIDTH,
+                        z * Sector.DEPTH * TILE_DEPTH);
+                
+                if (prevSectors[slot] == loadedSector) {
+                    prevSectors[slot] = null;
+                    if (loadedSector.isDetailedInScene() != detailed) {
+                        // Switch between full and simplified models
+                        loadedSector.removeFromScene(scene);
+                        loadedSector.addToScene(scene, detailed);
+                    } else if (moved) {
+                        // Re-base a Sector that was already loaded
+                        loadedSector.updateInScene(scene);
+                    }
+                } else {
+                    loadedSector.addToScene(scene, detailed);
+                }
+                
+                loadedSectors[slot] = loadedSector;
+                tiles.setSector(x * Sector.WIDTH, z * Sector.DEPTH,
+                        loadedSector.getSector());
+            }
         }
         
-        byte layer = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            layer = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        // Remove Sectors that have left the window
+        for (LoadedSector prevSector : prevSectors) {
+            if (prevSector != null) {
+                prevSector.removeFromScene(scene);
+            }
         }
         
-        return (sectors[layer].getTile(x, z).groundElevation & 0xff) * 3;
+        collisionChanged();
+    }
+
+    /**
+     * Gets the loaded Sector with the given absolute co-ordinates.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @return The Sector, or null if it is not loaded.
+     */
+    public LoadedSector getLoadedSector(int sectorX, int sectorZ) {
+        LoadedSector loadedSector = loadedSectors[getSlot(sectorX, sectorZ)];
+        if (loadedSector == null ||
+                loadedSector.getSectorX() != sectorX ||
+                loadedSector.getSectorZ() != sectorZ ||
+                loadedSector.getLayer() != currentLayer) {
+            return null;
+        }
+        return loadedSector;
+    }
+
+    /**
+     * Gets the loaded Sector containing the given tile.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return
+     */
+    private LoadedSector getLoadedSectorForTile(int x, int z) {
+        return loadedSectors[getSlot(
+                getFirstSectorX() + x / Sector.WIDTH,
+                getFirstSectorZ() + z / Sector.DEPTH)];
+    }
+
+    /**
+     * Gets the tile co-ordinate of the ground face with the given tag.
+     * 
+     * <p>For a face covering several tiles, this is the first tile.
+     * 
+     * @param faceId faceTag of the selected face, minus
+     * {@link #GROUND_FACE_TAG}.
+     * @return
+     */
+    public int getTileXForFace(int faceId) {
+        int tile = faceId / (CHUNK_WIDTH * CHUNK_DEPTH);
+        int slot = tile / Sector.NUM_TILES;
+        int x = (tile % Sector.NUM_TILES) / Sector.DEPTH;
+        return Math.floorMod(slot % MAX_SECTORS_X - getFirstSectorX(),
+                MAX_SECTORS_X) * Sector.WIDTH + x;
+    }
+
+    /**
+     * Gets the tile co-ordinate of the ground face with the given tag.
+     * 
+     * <p>For a face covering several tiles, this is the first tile.
+     * 
+     * @param faceId faceTag of the selected face, minus
+     * {@link #GROUND_FACE_TAG}.
+     * @return
+     */
+    public int getTileZForFace(int faceId) {
+        int tile = faceId / (CHUNK_WIDTH * CHUNK_DEPTH);
+        int slot = tile / Sector.NUM_TILES;
+        int z = (tile % Sector.NUM_TILES) % Sector.DEPTH;
+        return Math.floorMod(slot / MAX_SECTORS_X - getFirstSectorZ(),
+                MAX_SECTORS_Z) * Sector.DEPTH + z;
+    }
+
+    /**
+     * Gets the number of tiles covered in the x-axis by the ground face with
+     * the given tag.
+     * 
+     * @param faceId faceTag of the selected face, minus
+     * {@link #GROUND_FACE_TAG}.
+     * @return
+     */
+    public static int getTileWidthForFace(int faceId) {
+        return (faceId / CHUNK_DEPTH) % CHUNK_WIDTH + 1;
+    }
+
+    /**
+     * Gets the number of tiles covered in the z-axis by the ground face with
+     * the given tag.
+     * 
+     * @param faceId faceTag of the selected face, minus
+     * {@link #GROUND_FACE_TAG}.
+     * @return
+     */
+    public static int getTileDepthForFace(int faceId) {
+        return faceId % CHUNK_DEPTH + 1;
+    }
+
+    public int getGroundElevation(int x, int z) {
+        return (tiles.getGroundElevation(x, z) & 0xff) * 3;
     }
 
     public int getAveragedElevation(int tileX, int tileZ) {
@@ -205,7 +502,7 @@ public class World {
         int j1 = tileZ & 0x7f;
         
         if (x < 0 || z < 0 || 
-                x >= World.NUM_TILES_X - 1 || z >= World.NUM_TILES_Z - 1) {
+                x >= numTilesX - 1 || z >= numTilesZ - 1) {
             return 0;
         }
         
@@ -228,107 +525,271 @@ public class World {
         return k1 + (l1 * i1) / 128 + (i2 * j1) / 128;
     }
 
-    public void setWallModels(int layer, Model[] newWallModels) {
-        wallModels[layer] = newWallModels;
-        
-        for (int i = 0; i < 64; i++) {
-            scene.addModel(wallModels[layer][i]);
-        }
-    }
-
-    public void setRoofModels(int layer, Model[] newRoofModels) {
-        roofModels[layer] = newRoofModels;
-        for (int l9 = 0; l9 < 64; l9++) {
-            scene.addModel(roofModels[layer][l9]);
-        }
-    }
-    
+    /**
+     * Gets the landscape model for the given chunk of the window.
+     * 
+     * @param i
+     * @return
+     */
     public Model getLandscapeModel(int i) {
-        return landscapeModels[i];
+        LoadedSector loadedSector = getLoadedSectorForChunk(i);
+        return loadedSector == null ?
+                null : loadedSector.getLandscapeModel(getChunkInSector(i));
     }
 
-    public Model getWallModel(int layer, int index) {
-        return wallModels[layer][index];
+    /**
+     * Gets the wall model for the given chunk of the window.
+     * 
+     * @param layer
+     * @param i
+     * @return
+     */
+    public Model getWallModel(int layer, int i) {
+        LoadedSector loadedSector = getLoadedSectorForChunk(i);
+        return loadedSector == null ?
+                null : loadedSector.getWallModel(layer, getChunkInSector(i));
     }
 
-    public Model getRoofModel(int layer, int index) {
-        return roofModels[layer][index];
+    /**
+     * Gets the roof model for the given chunk of the window.
+     * 
+     * @param layer
+     * @param i
+     * @return
+     */
+    public Model getRoofModel(int layer, int i) {
+        LoadedSector loadedSector = getLoadedSectorForChunk(i);
+        return loadedSector == null ?
+                null : loadedSector.getRoofModel(layer, getChunkInSector(i));
     }
 
-    public int getGroundTexture(int x, int z) {
+    /**
+     * Gets the layers on which a tile is covered by a roof.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return Bitmask with bit <i>n</i> set if there is a roof on layer
+     * <i>n</i>, or 0 if the tile is not drawn in full detail.
+     */
+    public int getRoofLayers(int x, int z) {
         
-        if (x < 0 || x >= NUM_TILES_X || z < 0 || z >= NUM_TILES_Z) {
+        if (!containsTileRelativeToOrigin(x, z)) {
             return 0;
         }
         
-        byte layer = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            layer = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        LoadedSector loadedSector = getLoadedSectorForTile(x, z);
+        if (loadedSector == null || !loadedSector.isDetailedInScene()) {
+            return 0;
         }
         
-        return sectors[layer].getTile(x, z).texture & 0xFF;
+        return loadedSector.getRoofLayers(x % Sector.WIDTH, z % Sector.DEPTH);
+    }
+
+    /**
+     * Gets the loaded Sector containing the given chunk of the window.
+     * 
+     * @param i
+     * @return The Sector, or null if it is not loaded or is only drawn using
+     * simplified terrain.
+     */
+    private LoadedSector getLoadedSectorForChunk(int i) {
+        LoadedSector loadedSector = getLoadedSectorForTile(
+                (i % numChunksX) * CHUNK_WIDTH,
+                (i / numChunksX) * CHUNK_DEPTH);
+        if (loadedSector == null || !loadedSector.isDetailedInScene()) {
+            return null;
+        }
+        return loadedSector;
     }
 
-    public void setGroundTextureOverlay(int x, int z, int groundOverlay) {
+    private int getChunkInSector(int i) {
+        return (i % numChunksX) % LoadedSector.NUM_CHUNKS_X +
+                ((i / numChunksX) % LoadedSector.NUM_CHUNKS_Z) *
+                LoadedSector.NUM_CHUNKS_X;
+    }
+
+    public int getGroundTexture(int x, int z) {
+        return tiles.getTexture(x, z) & 0xff;
+    }
+
+    public int getGroundTextureOverlay(int x, int z) {
+        return tiles.getGroundOverlay(x, z) & 0xff;
+    }
+
+    public int getVerticalWall(int x, int z) {
+        return tiles.getVerticalWall(x, z) & 0xff;
+    }
+
+    public int getHorizontalWall(int x, int z) {
+        return tiles.getHorizontalWall(x, z) & 0xff;
+    }
+
+    public int getDiagonalWalls(int x, int z) {
+        return tiles.getDiagonalWalls(x, z);
+    }
+
+    /**
+     * Gets the collision flags of the given tile.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @return
+     * @see Collision
+     */
+    public int getCollisionFlags(int x, int z) {
+        return tiles.getCollision(x, z);
+    }
+
+    /**
+     * Changes a wall within the loaded window, e.g. when a door is opened or
+     * closed.
+     * 
+     * <p>The tile's collision flags are updated immediately, and the models
+     * around it are marked for rebuilding.
+     * 
+     * @param x Tile co-ordinate relative to the World origin.
+     * @param z Tile co-ordinate relative to the World origin.
+     * @param orientation One of the WALL_ constants.
+     * @param wall Wall ID, plus one; 0 removes the wall.
+     */
+    public void setWall(int x, int z, int orientation, int wall) {
         
-        if (x < 0 || x >= NUM_TILES_X || z < 0 || z >= NUM_TILES_Z) {
+        if (!containsTileRelativeToOrigin(x, z)) {
             return;
         }
         
-        byte layer = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            layer = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        LoadedSector loadedSector = getLoadedSectorForTile(x, z);
+        if (loadedSector == null) {
+            return;
         }
         
-        sectors[layer].getTile(x, z).groundOverlay = (byte) groundOverlay;
+        Sector sector = loadedSector.getSector();
+        int sectorX = x % Sector.WIDTH;
+        int sectorZ = z % Sector.DEPTH;
+        
+        switch (orientation) {
+        case WALL_VERTICAL:
+            sector.setVerticalWall(sectorX, sectorZ, (byte) wall);
+            break;
+        case WALL_HORIZONTAL:
+            sector.setHorizontalWall(sectorX, sectorZ, (byte) wall);
+            break;
+        case WALL_DIAGONAL:
+        case WALL_DIAGONAL_FLIPPED:
+            if (wall > 0 && orientation == WALL_DIAGONAL_FLIPPED) {
+                wall += 12000;
+            }
+            sector.setDiagonalWalls(sectorX, sectorZ, wall);
+            break;
+        default:
+            throw new IllegalArgumentException(
+                    "Invalid wall orientation: " + orientation);
+        }
+        
+        markTilesDirty(x, z, x, z, false);
     }
 
-    public int getGroundTextureOverlay(int x, int z) {
+    /**
+     * Flags the models around the given tiles as needing to be rebuilt, after
+     * the tiles of the loaded Sectors have been changed.
+     * 
+     * <p>The collision flags of the given tiles are updated immediately, but
+     * the models are not rebuilt until
+     * {@link WorldLoader#rebuildDirtyChunks()} is called.
+     * 
+     * @param x1 Tile co-ordinate relative to the World origin.
+     * @param z1 Tile co-ordinate relative to the World origin.
+     * @param x2 Tile co-ordinate relative to the World origin (inclusive).
+     * @param z2 Tile co-ordinate relative to the World origin (inclusive).
+     */
+    public void markTilesDirty(int x1, int z1, int x2, int z2) {
+        markTilesDirty(x1, z1, x2, z2, true);
+    }
+
+    /**
+     * Flags the models around the given tiles as needing to be rebuilt.
+     * 
+     * @param x1 Tile co-ordinate relative to the World origin.
+     * @param z1 Tile co-ordinate relative to the World origin.
+     * @param x2 Tile co-ordinate relative to the World origin (inclusive).
+     * @param z2 Tile co-ordinate relative to the World origin (inclusive).
+     * @param groundChanged Whether the ground itself may have changed, rather
+     * than just the walls and roofs. If not, the simplified terrain is kept.
+     */
+    private void markTilesDirty(int x1, int z1, int x2, int z2,
+            boolean groundChanged) {
         
-        if (x < 0 || x >= NUM_TILES_X || z < 0 || z >= NUM_TILES_Z) {
-            return 0;
+        int minX = Math.max(Math.min(x1, x2), 0);
+        int minZ = Math.max(Math.min(z1, z2), 0);
+        int maxX = Math.min(Math.max(x1, x2), numTilesX - 1);
+        int maxZ = Math.min(Math.max(z1, z2), numTilesZ - 1);
+        
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                LoadedSector loadedSector = getLoadedSectorForTile(x, z);
+                if (loadedSector != null) {
+                    Collision.update(loadedSector.getSector(),
+                            x % Sector.WIDTH, z % Sector.DEPTH);
+                }
+            }
         }
         
-        byte layer = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            layer = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            layer = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        // Bring the tile grid up to date
+        for (int x = minX - minX % Sector.WIDTH; x <= maxX; x += Sector.WIDTH) {
+            for (int z = minZ - minZ % Sector.DEPTH; z <= maxZ; z += Sector.DEPTH) {
+                LoadedSector loadedSector = getLoadedSectorForTile(x, z);
+                if (loadedSector != null) {
+                    tiles.setSector(x, z, loadedSector.getSector());
+                }
+            }
         }
         
-        return sectors[layer].getTile(x, z).groundOverlay & 0xff;
+        collisionChanged();
+        
+        minX = Math.max(minX - DIRTY_MARGIN, 0);
+        minZ = Math.max(minZ - DIRTY_MARGIN, 0);
+        maxX = Math.min(maxX + DIRTY_MARGIN, numTilesX - 1);
+        maxZ = Math.min(maxZ + DIRTY_MARGIN, numTilesZ - 1);
+        
+        for (int chunkX = minX / CHUNK_WIDTH; chunkX <= maxX / CHUNK_WIDTH; chunkX++) {
+            for (int chunkZ = minZ / CHUNK_DEPTH; chunkZ <= maxZ / CHUNK_DEPTH; chunkZ++) {
+                LoadedSector loadedSector = getLoadedSectorForTile(
+                        chunkX * CHUNK_WIDTH, chunkZ * CHUNK_DEPTH);
+                if (loadedSector != null) {
+                    loadedSector.markChunkDirty(getChunkInSector(
+                            chunkX + chunkZ * numChunksX));
+                    if (groundChanged) {
+                        loadedSector.markFarTerrainDirty();
+                    }
+                }
+            }
+        }
+    }
+
+    private void collisionChanged() {
+        collisionVersion++;
+        if (collisionVersion == 0) {
+            collisionVersion = 1;
+        }
     }
 
-    public void setSector(int i, Sector sector) {
-        sectors[i] = sector;
+    /**
+     * Gets a number that changes whenever the collision flags of any tile in
+     * the window change.
+     * 
+     * <p>This allows information derived from the collision flags to be
+     * kept until it is out of date.
+     * 
+     * @return
+     */
+    public int getCollisionVersion() {
+        return collisionVersion;
     }
 
-    public Sector getSector(int i) {
-        return sectors[i];
+    public Scene getScene() {
+        return scene;
     }
-    
+
     public int getCurrentLayer() {
         return currentLayer;
     }
@@ -348,7 +809,7 @@ public class World {
 
     public boolean containsTileRelativeToOrigin(int tileX, int tileZ) {
         return tileX >= 0 && tileZ >= 0 &&
-                tileX < NUM_TILES_X && tileZ < NUM_TILES_Z;
+                tileX < numTilesX && tileZ < numTilesZ;
     }
 
     public int getNumDoors() {
@@ -379,19 +840,112 @@ public class World {
         return sectorZ;
     }
 
+    public int getSectorsX() {
+        return sectorsX;
+    }
+
+    public int getSectorsZ() {
+        return sectorsZ;
+    }
+
+    /**
+     * Gets the total number of Sectors loaded at a time.
+     * 
+     * @return
+     */
+    public int getNumSectors() {
+        return sectorsX * sectorsZ;
+    }
+
+    public int getNumTilesX() {
+        return numTilesX;
+    }
+
+    public int getNumTilesZ() {
+        return numTilesZ;
+    }
+
+    /**
+     * Gets the total number of landscape chunks in the window.
+     * 
+     * @return
+     */
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    public int getLoadMinX() {
+        return loadMinX;
+    }
+
+    public int getLoadMinZ() {
+        return loadMinZ;
+    }
+
+    public int getLoadMaxX() {
+        return loadMaxX;
+    }
+
+    public int getLoadMaxZ() {
+        return loadMaxZ;
+    }
+
+    /**
+     * Gets the x co-ordinate of the first Sector of the window.
+     * 
+     * @return
+     */
+    public int getFirstSectorX() {
+        return getFirstSectorX(sectorX);
+    }
+
+    /**
+     * Gets the x co-ordinate of the first Sector of the window centred on
+     * the given sector.
+     * 
+     * @param sectorX
+     * @return
+     */
+    public int getFirstSectorX(int sectorX) {
+        return sectorX - sectorsX / 2;
+    }
+
+    /**
+     * Gets the z co-ordinate of the first Sector of the window.
+     * 
+     * @return
+     */
+    public int getFirstSectorZ() {
+        return getFirstSectorZ(sectorZ);
+    }
+
+    /**
+     * Gets the z co-ordinate of the first Sector of the window centred on
+     * the given sector.
+     * 
+     * @param sectorZ
+     * @return
+     */
+    public int getFirstSectorZ(int sectorZ) {
+        return sectorZ - sectorsZ / 2;
+    }
+
     public void setCurrentSector(int sectorX, int sectorZ) {
         this.sectorX = sectorX;
         this.sectorZ = sectorZ;
         
+        int firstTileX = getFirstSectorX() * Sector.WIDTH;
+        int firstTileZ = getFirstSectorZ() * Sector.DEPTH;
+        
         // Set map boundary around the loaded sectors
-        mapBoundaryX1 = sectorX * Sector.WIDTH - 32;
-        mapBoundaryZ1 = sectorZ * Sector.DEPTH - 32;
-        mapBoundaryX2 = sectorX * Sector.WIDTH + 32;
-        mapBoundaryZ2 = sectorZ * Sector.DEPTH + 32;
+        mapBoundaryX1 = firstTileX + loadMinX;
+        mapBoundaryZ1 = firstTileZ + loadMinZ;
+        mapBoundaryX2 = firstTileX + loadMaxX;
+        mapBoundaryZ2 = firstTileZ + loadMaxZ;
 
         // Set the current origin
-        originX = (sectorX * Sector.WIDTH - Sector.WIDTH) - START_X;
-        originZ = (sectorZ * Sector.DEPTH - Sector.DEPTH) - START_Z;
+        originX = firstTileX - START_X;
+        originZ = firstTileZ - START_Z;
     }
 
 }
@@ -1,9 +1,21 @@
 package client.world;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
 import client.entityhandling.defs.TileDef;
 import client.model.Sector;
+import client.model.TileGrid;
 import client.res.Resources;
 import client.scene.Model;
+import client.scene.ModelPool;
+import client.scene.Scene;
 import client.util.DataUtils;
 import client.util.ModelUtils;
 
@@ -14,12 +26,69 @@ import client.util.ModelUtils;
  */
 public class WorldLoader {
 
+    /**
+     * Number of tiles beyond the edge of a Sector that are processed when
+     * building it.
+     * 
+     * <p>Faces in this border are discarded, but their presence means that
+     * lighting, wall shading and roof heights at the edge of the Sector match
+     * those of its neighbours.
+     */
+    private static final int APRON = 2;
+
+    /**
+     * First tile processed when building a Sector, relative to the Sector.
+     */
+    private static final int REGION_MIN = -APRON;
+
+    /**
+     * Last tile processed when building a Sector (exclusive), in the x-axis.
+     */
+    private static final int REGION_MAX_X = Sector.WIDTH + APRON;
+
+    /**
+     * Last tile processed when building a Sector (exclusive), in the z-axis.
+     */
+    private static final int REGION_MAX_Z = Sector.DEPTH + APRON;
+
+    /**
+     * Number of tiles processed when building a Sector.
+     */
+    private static final int REGION_TILES =
+            (REGION_MAX_X - REGION_MIN) * (REGION_MAX_Z - REGION_MIN);
+
+    /**
+     * Number of tiles beyond those being rebuilt that are looked at while
+     * rebuilding them (e.g. the neighbours of each roof corner).
+     */
+    private static final int REBUILD_MARGIN = 2;
+
+    /**
+     * Number of extra tiles loaded around those being rebuilt, so that most
+     * roofs that cross into them can be found without loading any more.
+     */
+    private static final int ROOF_LOOKAHEAD = 4;
+
+    /**
+     * Size of each face of the simplified terrain, in tiles.
+     */
+    private static final int FAR_TERRAIN_STEP = 4;
+
+    /**
+     * Scratch models used to mesh the terrain of each chunk.
+     * 
+     * <p>Chunks are meshed in parallel, so each TerrainBuilder takes its own
+     * model from here and returns it once finished.
+     */
+    private static final ConcurrentLinkedQueue<Model> terrainModels =
+            new ConcurrentLinkedQueue<>();
+
     /**
      * Model used when loading sectors.
      */
     private Model tmpModel = new Model(
-            World.NUM_TERRAIN_FACES + 256,
-            World.NUM_TERRAIN_FACES + 256,
+            REGION_TILES * 2 + 256,
+            REGION_TILES * 2 + 256,
             true,
             true,
             false,
@@ -75,10 +144,139 @@ public class WorldLoader {
         }
     }
     
-    private World world;
+    /**
+     * Minimum number of built Sectors to keep in the cache.
+     * 
+     * <p>Larger windows keep enough to refill the window twice over.
+     */
+    private static final int SECTOR_CACHE_CAPACITY = 16;
     
+    /**
+     * Maximum number of tiles, in each axis, that can be merged into a single
+     * ground or wall face.
+     * 
+     * <p>Polygons are depth-sorted by their average depth, so a large face
+     * can be drawn over something standing on or beside it. Rendering
+     * Lumbridge and its surroundings with a post on every tile, the posts
+     * drawn wrongly grow slowly up to 4 tiles, then sharply: by half again at
+     * 5 tiles and threefold at 8 for ground faces, and by 40% at 6 tiles for
+     * walls.
+     */
+    private static final int MAX_MERGED_TILES = 4;
+    
+    /**
+     * The World into which sectors are loaded.
+     */
+    private World world;
+
+    /**
+     * Recently-built Sectors, which can be placed back into the World without
+     * rebuilding any models.
+     */
+    private LoadedSectorCache sectorCache;
+
+    /**
+     * Thread on which sectors are loaded in the background.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Loader used by the background thread.
+     * 
+     * <p>This has its own temporary Model, so that it can never interfere with
+     * a synchronous load on the game thread.
+     */
+    private WorldLoader backgroundLoader;
+
+    /**
+     * Background load that has yet to be applied to the World.
+     */
+    private Future<LoadedSector[]> pendingLoad;
+
+    /**
+     * Builds the Sectors that the player is heading towards in advance.
+     */
+    private SectorPrefetcher prefetcher;
+
+    /**
+     * Sector requested by the pending background load.
+     */
+    private int pendingSectorX;
+    private int pendingSectorZ;
+
+    /**
+     * Sector currently being built.
+     */
+    private LoadedSector loadedSector;
+
+    /**
+     * The Sector being built and its immediate neighbours, for the layer
+     * currently being processed.
+     * 
+     * <p>Indexed by <code>(x + 1) + (z + 1) * 3</code>, where (x, z) is the
+     * position relative to the Sector being built.
+     */
+    private Sector[] neighbours = new Sector[9];
+
+    /**
+     * Tiles of the neighbouring Sectors, as a single contiguous grid.
+     * 
+     * <p>Tile (x, z) relative to the Sector being built is found at
+     * (x + Sector.WIDTH, z + Sector.DEPTH).
+     */
+    private TileGrid tiles = new TileGrid(Sector.WIDTH * 3, Sector.DEPTH * 3);
+
+    /**
+     * Working elevation of each tile corner around the Sector being built.
+     */
+    private int[][] elevation =
+            new int[Sector.WIDTH * 3 + 1][Sector.DEPTH * 3 + 1];
+
+    /*
+     * Tile classification flags.
+     */
+    private static final int TILE_OVERLAY       = 1;
+    private static final int TILE_BRIDGE        = 2;
+    private static final int TILE_WATER         = 4;
+    private static final int TILE_FLOOR         = 8;
+    private static final int TILE_BLEND         = 16;
+    private static final int TILE_DIAGONAL_WALL = 32;
+
+    /**
+     * Classification of each tile in the grid, for the layer currently being
+     * processed.
+     * 
+     * <p>These flags are derived from the TileDef of each tile's overlay when
+     * the layer is loaded, so that meshing does not need to look up the same
+     * TileDefs over and over again.
+     * 
+     * <p>Indexed in the same way as the TileGrid.
+     */
+    private byte[] tileFlags = new byte[Sector.WIDTH * 3 * Sector.DEPTH * 3];
+
+    /**
+     * Colour of each ground overlay, indexed by overlay ID.
+     */
+    private int[] overlayColours = new int[256];
+
+    /**
+     * Whether flat ground tiles of the same colour, and straight runs of the
+     * same wall, should be merged into larger faces.
+     */
+    private boolean mergeFaces = true;
+
     public WorldLoader(World world) {
         this.world = world;
+        
+        int capacity = SECTOR_CACHE_CAPACITY;
+        if (world != null) {
+            capacity = Math.max(capacity, world.getNumSectors() * 2);
+        }
+        sectorCache = new LoadedSectorCache(capacity);
+        
+        if (world != null) {
+            prefetcher = new SectorPrefetcher(world, this);
+        }
     }
 
     /**
@@ -109,316 +307,634 @@ public class WorldLoader {
     /**
      * Loads the given sector.
      * 
+     * <p>Only Sectors that are neither loaded nor cached are built; the rest
+     * are moved into their new position.
+     * 
      * @param sectorX
      * @param sectorZ
      */
     public void loadSector(int sectorX, int sectorZ) {
         
-        // Remove old models
-        world.clear();
+        // Any background load would overwrite this one
+        cancelBackgroundLoad();
         
-        // Load the new sector
-        int prevOriginX = world.getOriginX();
-        int prevOriginZ = world.getOriginZ();
-        world.setCurrentSector(sectorX, sectorZ);
-        loadRequiredLayers(sectorX, sectorZ, world.getCurrentLayer());
-
-        // Shift objects
-        int dx = world.getOriginX() - prevOriginX;
-        int dz = world.getOriginZ() - prevOriginZ;
-        moveObjects(dx, dz);
+        int layer = world.getCurrentLayer();
+        LoadedSector[] newSectors = findLoadedSectors(sectorX, sectorZ);
+        
+        for (int i = 0; i < newSectors.length; i++) {
+            if (newSectors[i] == null) {
+                newSectors[i] = buildSector(
+                        getWindowSectorX(sectorX, i),
+                        getWindowSectorZ(sectorZ, i),
+                        layer,
+                        isDetailed(i));
+            }
+        }
+        
+        applyLoadedSectors(sectorX, sectorZ, newSectors);
     }
-    
+
     /**
-     * Loads all required layers of the given sector.
+     * Starts loading the given sector in the background.
+     * 
+     * <p>Any Sectors that need building are built on a background thread, so
+     * the current sector can continue to be rendered in the meantime. The
+     * result is applied by {@link #applyBackgroundLoad()}.
+     * 
+     * <p>This has no effect if a background load is already in progress.
      * 
      * @param sectorX
      * @param sectorZ
-     * @param currentLayer
      */
-    private void loadRequiredLayers(int sectorX, int sectorZ, int currentLayer) {
+    public void loadSectorInBackground(int sectorX, int sectorZ) {
+        
+        if (isLoadingInBackground()) {
+            return;
+        }
+        
+        int layer = world.getCurrentLayer();
+        LoadedSector[] newSectors = findLoadedSectors(sectorX, sectorZ);
+        
+        // Work out which Sectors to build up-front, so that the background
+        // thread never touches the World
+        int[] buildX = new int[newSectors.length];
+        int[] buildZ = new int[newSectors.length];
+        boolean[] buildDetailed = new boolean[newSectors.length];
+        for (int i = 0; i < newSectors.length; i++) {
+            buildX[i] = getWindowSectorX(sectorX, i);
+            buildZ[i] = getWindowSectorZ(sectorZ, i);
+            buildDetailed[i] = isDetailed(i);
+        }
+        
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Sector Loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            backgroundLoader = new WorldLoader(null);
+        }
+        backgroundLoader.mergeFaces = mergeFaces;
+        
+        pendingSectorX = sectorX;
+        pendingSectorZ = sectorZ;
+        pendingLoad = executor.submit(() -> {
+            for (int i = 0; i < newSectors.length; i++) {
+                if (newSectors[i] == null) {
+                    newSectors[i] = backgroundLoader.buildSector(
+                            buildX[i], buildZ[i], layer, buildDetailed[i]);
+                }
+            }
+            return newSectors;
+        });
+    }
 
-        System.out.println("Loading sector: " + sectorX + ", " + sectorZ +
-                " (" + currentLayer + ")");
+    /**
+     * Finds the Sectors of the given window that have already been built,
+     * either because they are loaded or because they are cached.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @return Sectors of the window, or null for those that must be built.
+     */
+    private LoadedSector[] findLoadedSectors(int sectorX, int sectorZ) {
+        
+        int layer = world.getCurrentLayer();
+        LoadedSector[] newSectors = new LoadedSector[world.getNumSectors()];
+        
+        for (int i = 0; i < newSectors.length; i++) {
+            int x = getWindowSectorX(sectorX, i);
+            int z = getWindowSectorZ(sectorZ, i);
+            newSectors[i] = world.getLoadedSector(x, z);
+            if (newSectors[i] == null) {
+                newSectors[i] = sectorCache.get(x, z, layer);
+            }
+            if (newSectors[i] != null &&
+                    isDetailed(i) && !newSectors[i].isDetailed()) {
+                // Sector has come close enough to need its full models
+                newSectors[i] = null;
+            }
+            if (newSectors[i] == null) {
+                newSectors[i] = prefetcher.take(x, z, layer, isDetailed(i));
+            }
+        }
+        
+        return newSectors;
+    }
 
-        loadLayer(sectorX, sectorZ, currentLayer, true);
+    /**
+     * Requests that the Sectors of the given window be built in advance, on
+     * the prefetcher's background thread.
+     * 
+     * <p>Sectors that are already loaded or cached are skipped.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     */
+    void prefetchWindow(int sectorX, int sectorZ) {
+        
+        int layer = world.getCurrentLayer();
+        
+        for (int i = 0; i < world.getNumSectors(); i++) {
+            int x = getWindowSectorX(sectorX, i);
+            int z = getWindowSectorZ(sectorZ, i);
+            LoadedSector sector = world.getLoadedSector(x, z);
+            if (sector == null) {
+                sector = sectorCache.peek(x, z, layer);
+            }
+            if (sector == null || isDetailed(i) && !sector.isDetailed()) {
+                prefetcher.request(x, z, layer, isDetailed(i), mergeFaces);
+            }
+        }
+    }
 
-        if (currentLayer == 0) {
+    /**
+     * Gets the x co-ordinate of a Sector within the given window.
+     * 
+     * @param sectorX
+     * @param i Index of the Sector within the window.
+     * @return
+     */
+    private int getWindowSectorX(int sectorX, int i) {
+        return world.getFirstSectorX(sectorX) + i % world.getSectorsX();
+    }
 
-            // Load upper storeys (they should be visible from the ground floor)
-            loadLayer(sectorX, sectorZ, 1, false);
-            loadLayer(sectorX, sectorZ, 2, false);
+    /**
+     * Gets the z co-ordinate of a Sector within the given window.
+     * 
+     * @param sectorZ
+     * @param i Index of the Sector within the window.
+     * @return
+     */
+    private int getWindowSectorZ(int sectorZ, int i) {
+        return world.getFirstSectorZ(sectorZ) + i / world.getSectorsX();
+    }
 
-            // Set the active sectors back to the current layer
-            setCurrentSector(sectorX, sectorZ, currentLayer);
-        }
+    /**
+     * Determines whether a Sector within the window should be drawn in full
+     * detail.
+     * 
+     * @param i Index of the Sector within the window.
+     * @return
+     */
+    private boolean isDetailed(int i) {
+        return world.isDetailed(
+                i % world.getSectorsX(),
+                i / world.getSectorsX());
     }
 
     /**
-     * Loads a single layer of the given sector.
+     * Builds the models for the given Sector.
+     * 
+     * <p>If the Sector has been pre-built into the mesh archive with the same
+     * settings as this loader, it is loaded from there instead.
+     * 
+     * <p>When called from the background thread, this must not touch the
+     * World or the Scene.
      * 
      * @param sectorX
      * @param sectorZ
      * @param layer
-     * @param isCurrentLayer
+     * @param detailed Whether to build the full-detail models, as well as the
+     * simplified terrain.
+     * @return
      */
-    private void loadLayer(int sectorX, int sectorZ, int layer, boolean isCurrentLayer) {
-
-        setCurrentSector(sectorX, sectorZ, layer);
+    public LoadedSector buildSector(int sectorX, int sectorZ, int layer,
+            boolean detailed) {
         
-        tmpModel.clear();
+        MeshArchive meshArchive = Resources.meshArchive;
+        if (meshArchive != null && meshArchive.isMergeFaces() == mergeFaces) {
+            try {
+                LoadedSector baked = meshArchive.load(
+                        sectorX, sectorZ, layer, detailed);
+                if (baked != null) {
+                    return baked;
+                }
+            } catch (IOException e) {
+                // Fall back to building the Sector
+                e.printStackTrace();
+            }
+        }
+        
+        loadedSector = new LoadedSector(sectorX, sectorZ, layer, detailed);
+        
+        if (detailed) {
+            loadRequiredLayers(sectorX, sectorZ, layer);
+        } else {
+            loadNeighbours(sectorX, sectorZ, layer);
+        }
+        
+        loadFarTerrain(layer);
+        
+        return loadedSector;
+    }
 
-        if (isCurrentLayer) {
-            
-            /*
-             * Load terrain 
-             */
-    
-            // Set elevation and lighting
-            for (int x = 0; x < World.NUM_TILES_X; x++) {
-                for (int z = 0; z < World.NUM_TILES_Z; z++) {
-                    
-                    int elevation = -world.getGroundElevation(x, z);
-                    
-                    // Flatten water under bridges
-                    if (world.getGroundTextureOverlay(x, z) > 0
-                            && Resources.getTileDef(world.getGroundTextureOverlay(x, z) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                        elevation = 0;
-                    } else if (world.getGroundTextureOverlay(x - 1, z) > 0
-                            && Resources.getTileDef(world.getGroundTextureOverlay(x - 1, z) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                        elevation = 0;
-                    } else if (world.getGroundTextureOverlay(x, z - 1) > 0
-                            && Resources.getTileDef(world.getGroundTextureOverlay(x, z - 1) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                        elevation = 0;
-                    } else if (world.getGroundTextureOverlay(x - 1, z - 1) > 0 && 
-                            Resources.getTileDef(world.getGroundTextureOverlay(x - 1, z - 1) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                        elevation = 0;
-                    }
+    /**
+     * Rebuilds the models of any chunks flagged by
+     * {@link World#markTilesDirty(int, int, int, int)}.
+     * 
+     * <p>This should be called from the game thread at a frame boundary.
+     * 
+     * @return True if any models were rebuilt.
+     */
+    public boolean rebuildDirtyChunks() {
+        
+        boolean rebuilt = false;
+        
+        for (int i = 0; i < world.getNumSectors(); i++) {
+            LoadedSector target = world.getLoadedSector(
+                    getWindowSectorX(world.getSectorX(), i),
+                    getWindowSectorZ(world.getSectorZ(), i));
+            if (target == null || target.getDirtyChunks() == 0) {
+                continue;
+            }
+            rebuildChunks(target);
+            target.clearDirtyChunks();
+            rebuilt = true;
+        }
+        
+        return rebuilt;
+    }
 
-                    int vertexId = tmpModel.createVertexWithoutDuplication(
-                            x * World.TILE_WIDTH,
-                            elevation,
-                            z * World.TILE_DEPTH);
-                    
-                    // Randomise vertex ambience
-                    int ambience = (int) (Math.random() * 10D) - 5;
-                    tmpModel.setVertexAmbience(vertexId, ambience);
+    /**
+     * Rebuilds the dirty chunks of a loaded Sector.
+     * 
+     * <p>Only the models of the current layer are rebuilt: the terrain of
+     * each dirty chunk is re-meshed on its own, and walls and roofs are only
+     * created for the tiles in and around the dirty chunks. Only these tiles
+     * are reloaded, along with any roof that reaches them, since roof heights
+     * are levelled across the whole roof.
+     * 
+     * <p>The simplified terrain is only rebuilt if the ground has changed.
+     * 
+     * @param target
+     */
+    private void rebuildChunks(LoadedSector target) {
+        
+        int sectorX = target.getSectorX();
+        int sectorZ = target.getSectorZ();
+        int layer = target.getLayer();
+        Scene scene = world.getScene();
+        
+        // Build into a temporary Sector, so that the wall shading is only
+        // applied to the new terrain
+        loadedSector = new LoadedSector(sectorX, sectorZ, layer, true);
+        loadedSector.setSector(target.getSector());
+        
+        if (target.isFarTerrainDirty()) {
+            // The last corners lie in the next Sectors
+            loadRegion(sectorX, sectorZ, layer,
+                    0, 0, Sector.WIDTH + 1, Sector.DEPTH + 1);
+            loadFarTerrain(layer);
+            target.replaceFarTerrainModel(scene, loadedSector.getFarTerrainModel());
+        }
+        
+        if (!target.isDetailed()) {
+            return;
+        }
+        
+        int dirtyChunks = target.getDirtyChunks();
+        int[] chunks = IntStream.range(0, LoadedSector.NUM_CHUNKS)
+                .filter(chunk -> (dirtyChunks & (1 << chunk)) != 0)
+                .toArray();
+        
+        // Find the tiles covered by the dirty chunks
+        int minX = Sector.WIDTH;
+        int minZ = Sector.DEPTH;
+        int maxX = 0;
+        int maxZ = 0;
+        for (int chunk : chunks) {
+            int chunkX = (chunk % LoadedSector.NUM_CHUNKS_X) * World.CHUNK_WIDTH;
+            int chunkZ = (chunk / LoadedSector.NUM_CHUNKS_X) * World.CHUNK_DEPTH;
+            minX = Math.min(minX, chunkX);
+            minZ = Math.min(minZ, chunkZ);
+            maxX = Math.max(maxX, chunkX + World.CHUNK_WIDTH);
+            maxZ = Math.max(maxZ, chunkZ + World.CHUNK_DEPTH);
+        }
+        
+        // Walls and roofs are created around the dirty chunks, so that any
+        // that overhang them or shade their terrain are included
+        int[] bounds = {
+                minX - APRON,
+                minZ - APRON,
+                maxX + APRON,
+                maxZ + APRON };
+        
+        // Load the tiles needed, taking in any roofs that cross the bounds
+        int[] roofBounds = bounds.clone();
+        int[] loadedBounds = new int[4];
+        do {
+            int margin = REBUILD_MARGIN + ROOF_LOOKAHEAD;
+            loadedBounds[0] = roofBounds[0] - margin;
+            loadedBounds[1] = roofBounds[1] - margin;
+            loadedBounds[2] = roofBounds[2] + margin;
+            loadedBounds[3] = roofBounds[3] + margin;
+            loadRegion(sectorX, sectorZ, layer, loadedBounds[0],
+                    loadedBounds[1], loadedBounds[2], loadedBounds[3]);
+        } while (!expandToRoofs(roofBounds, loadedBounds));
+        
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
+                if (getRoofTexture(x, z) != 0) {
+                    target.setRoofed(x, z, layer);
+                } else {
+                    target.clearRoofed(x, z, layer);
                 }
             }
+        }
+        
+        /*
+         * Rebuild terrain
+         */
+        
+        Model[] landscapeModels = new Model[LoadedSector.NUM_CHUNKS];
+        IntStream.of(chunks).parallel().forEach(chunk -> {
+            TerrainBuilder builder = new TerrainBuilder(chunk);
+            landscapeModels[chunk] = builder.build(layer);
+        });
+        for (int chunk : chunks) {
+            loadedSector.setLandscapeModel(chunk, landscapeModels[chunk]);
+        }
+        
+        // Walls just outside the roofs still raise their corners
+        int wallMinX = Math.max(roofBounds[0] - 1, REGION_MIN);
+        int wallMinZ = Math.max(roofBounds[1] - 1, REGION_MIN);
+        int wallMaxX = Math.min(roofBounds[2] + 1, REGION_MAX_X);
+        int wallMaxZ = Math.min(roofBounds[3] + 1, REGION_MAX_Z);
+        
+        for (int x = wallMinX; x <= wallMaxX; x++) {
+            for (int z = wallMinZ; z <= wallMaxZ; z++) {
+                setElevation(x, z, getGroundElevation(x, z));
+            }
+        }
+        
+        /*
+         * Rebuild walls
+         */
+        
+        tmpModel.clear();
+        createWalls(bounds[0], bounds[1], bounds[2], bounds[3]);
+        tmpModel.recalculateLighting(false, 60, 24, -50, -10, -50);
+        Model[] wallModels = createModelArray(true, dirtyChunks);
+        
+        /*
+         * Rebuild roofs
+         */
+        
+        raiseWalls(wallMinX, wallMinZ, wallMaxX, wallMaxZ);
+        raiseRoofs(roofBounds[0], roofBounds[1], roofBounds[2], roofBounds[3]);
+        
+        tmpModel.clear();
+        createRoofs(bounds[0], bounds[1], bounds[2], bounds[3]);
+        tmpModel.recalculateLighting(true, 50, 50, -50, -10, -50);
+        Model[] roofModels = createModelArray(true, dirtyChunks);
+        
+        for (int chunk : chunks) {
+            target.replaceChunkModels(scene, chunk,
+                    landscapeModels[chunk], wallModels[chunk], roofModels[chunk]);
+        }
+    }
 
-            // Set ground colours
-            for (int x = 0; x < World.NUM_TILES_X - 1; x++) {
-                for (int z = 0; z < World.NUM_TILES_Z - 1; z++) {
-                    
-                    int groundTexture = world.getGroundTexture(x, z);
-                    int groundColour = GROUND_COLOURS[groundTexture];
-                    int groundColour1 = groundColour;
-                    int groundColour2 = groundColour;
-                    
-                    // Each Tile is made of 2 triangles
-                    int triangleIndex = 0;
+    /**
+     * Expands the given bounds to take in the whole of any roof that crosses
+     * them, within the region of the Sector being built.
+     * 
+     * <p>Roofed tiles that share a corner belong to the same roof.
+     * 
+     * @param bounds Minimum and maximum (exclusive) x and z, relative to the
+     * Sector being built. These are updated in place.
+     * @param loadedBounds Bounds of the tiles in the grid, in the same form.
+     * @return True if finished; false if the bounds need to grow further
+     * than the tiles in the grid allow.
+     */
+    private boolean expandToRoofs(int[] bounds, int[] loadedBounds) {
+        
+        // Tiles around the roofs are looked at when they are built
+        int limitMinX = Math.max(loadedBounds[0] + REBUILD_MARGIN, REGION_MIN);
+        int limitMinZ = Math.max(loadedBounds[1] + REBUILD_MARGIN, REGION_MIN);
+        int limitMaxX = Math.min(loadedBounds[2] - REBUILD_MARGIN, REGION_MAX_X);
+        int limitMaxZ = Math.min(loadedBounds[3] - REBUILD_MARGIN, REGION_MAX_Z);
+        
+        boolean expanded;
+        do {
+            int minX = bounds[0];
+            int minZ = bounds[1];
+            int maxX = bounds[2];
+            int maxZ = bounds[3];
+            expanded = false;
+            
+            for (int x = minX; x < maxX; x++) {
+                
+                // Only the edges of the bounds need to be checked
+                boolean edgeX = x == minX || x == maxX - 1;
+                int stepZ = edgeX ? 1 : Math.max(maxZ - minZ - 1, 1);
+                
+                for (int z = minZ; z < maxZ; z += stepZ) {
                     
-                    // Tiles in upper layers are black
-                    if (layer == 1 || layer == 2) {
-                        groundColour = 0xbc614e;
-                        groundColour1 = 0xbc614e;
-                        groundColour2 = 0xbc614e;
+                    if (getRoofTexture(x, z) == 0) {
+                        continue;
                     }
                     
-                    if (world.getGroundTextureOverlay(x, z) > 0) {
-                        int groundTextureOverlay = world.getGroundTextureOverlay(x, z);
-                        int tileType1 = Resources.getTileDef(groundTextureOverlay - 1).getType();
-                        int tileType2 = getTileType(x, z);
-                        groundColour = groundColour1 = Resources.getTileDef(groundTextureOverlay - 1).getColour();
-                        
-                        // Set water texture under bridges
-                        if (tileType1 == TileDef.TYPE_BRIDGE) {
-                            groundColour = 1;
-                            groundColour1 = 1;
-                            if (groundTextureOverlay == 12) {
-                                groundColour = 31;
-                                groundColour1 = 31;
-                            }
-                        }
-    
-                        if (tileType1 == 5) {
-                            if (getDiagonalWalls(x, z) > 0 && getDiagonalWalls(x, z) < 24000) {
-                                if (getOverlayIfRequired(x - 1, z, groundColour2) != 0xbc614e
-                                        && getOverlayIfRequired(x, z - 1, groundColour2) != 0xbc614e) {
-                                    groundColour = getOverlayIfRequired(x - 1, z, groundColour2);
-                                    triangleIndex = 0;
-                                } else if (getOverlayIfRequired(x + 1, z, groundColour2) != 0xbc614e
-                                        && getOverlayIfRequired(x, z + 1, groundColour2) != 0xbc614e) {
-                                    groundColour1 = getOverlayIfRequired(x + 1, z, groundColour2);
-                                    triangleIndex = 0;
-                                } else if (getOverlayIfRequired(x + 1, z, groundColour2) != 0xbc614e
-                                        && getOverlayIfRequired(x, z - 1, groundColour2) != 0xbc614e) {
-                                    groundColour1 = getOverlayIfRequired(x + 1, z, groundColour2);
-                                    triangleIndex = 1;
-                                } else if (getOverlayIfRequired(x - 1, z, groundColour2) != 0xbc614e
-                                        && getOverlayIfRequired(x, z + 1, groundColour2) != 0xbc614e) {
-                                    groundColour = getOverlayIfRequired(x - 1, z, groundColour2);
-                                    triangleIndex = 1;
-                                }
-                            }
+                    for (int nx = x - 1; nx <= x + 1; nx++) {
+                        for (int nz = z - 1; nz <= z + 1; nz++) {
                             
-                        // Create smooth diagonal lines for road / water edges, etc.
-                        } else if (tileType1 != 2 || getDiagonalWalls(x, z) > 0 && getDiagonalWalls(x, z) < 24000) {
-                            if (getTileType(x - 1, z) != tileType2 && getTileType(x, z - 1) != tileType2) {
-                                groundColour = groundColour2;
-                                triangleIndex = 0;
-                            } else if (getTileType(x + 1, z) != tileType2 && getTileType(x, z + 1) != tileType2) {
-                                groundColour1 = groundColour2;
-                                triangleIndex = 0;
-                            } else if (getTileType(x + 1, z) != tileType2 && getTileType(x, z - 1) != tileType2) {
-                                groundColour1 = groundColour2;
-                                triangleIndex = 1;
-                            } else if (getTileType(x - 1, z) != tileType2 && getTileType(x, z + 1) != tileType2) {
-                                groundColour = groundColour2;
-                                triangleIndex = 1;
+                            if (nx >= minX && nx < maxX &&
+                                    nz >= minZ && nz < maxZ) {
+                                continue;
                             }
-                        }
-                    }
-                    
-                    int i17 = ((world.getGroundElevation(x + 1, z + 1) - world.getGroundElevation(x + 1, z))
-                            + world.getGroundElevation(x, z + 1)) - world.getGroundElevation(x, z);
-                    if (groundColour != groundColour1 || i17 != 0) {
-                        int ai[] = new int[3];
-                        int ai7[] = new int[3];
-                        if (triangleIndex == 0) {
-                            if (groundColour != 0xbc614e) {
-                                ai[0] = z + x * 96 + 96;
-                                ai[1] = z + x * 96;
-                                ai[2] = z + x * 96 + 1;
-                                int l21 = tmpModel.createFace(3, ai, 0xbc614e, groundColour);
-                                world.setTilePosForFace(l21, x, z);
-                                tmpModel.faceTag[l21] = 0x30d40 + l21;
-                            }
-                            if (groundColour1 != 0xbc614e) {
-                                ai7[0] = z + x * 96 + 1;
-                                ai7[1] = z + x * 96 + 96 + 1;
-                                ai7[2] = z + x * 96 + 96;
-                                int i22 = tmpModel.createFace(3, ai7, 0xbc614e, groundColour1);
-                                world.setTilePosForFace(i22, x, z);
-                                tmpModel.faceTag[i22] = 0x30d40 + i22;
-                            }
-                        } else {
-                            if (groundColour != 0xbc614e) {
-                                ai[0] = z + x * 96 + 1;
-                                ai[1] = z + x * 96 + 96 + 1;
-                                ai[2] = z + x * 96;
-                                int j22 = tmpModel.createFace(3, ai, 0xbc614e, groundColour);
-                                world.setTilePosForFace(j22, x, z);
-                                tmpModel.faceTag[j22] = 0x30d40 + j22;
+                            
+                            if (nx < REGION_MIN || nx >= REGION_MAX_X ||
+                                    nz < REGION_MIN || nz >= REGION_MAX_Z ||
+                                    getRoofTexture(nx, nz) == 0) {
+                                continue;
                             }
-                            if (groundColour1 != 0xbc614e) {
-                                ai7[0] = z + x * 96 + 96;
-                                ai7[1] = z + x * 96;
-                                ai7[2] = z + x * 96 + 96 + 1;
-                                int k22 = tmpModel.createFace(3, ai7, 0xbc614e, groundColour1);
-                                world.setTilePosForFace(k22, x, z);
-                                tmpModel.faceTag[k22] = 0x30d40 + k22;
+                            
+                            if (nx < limitMinX || nx >= limitMaxX ||
+                                    nz < limitMinZ || nz >= limitMaxZ) {
+                                return false;
                             }
+                            
+                            bounds[0] = Math.min(bounds[0], nx);
+                            bounds[1] = Math.min(bounds[1], nz);
+                            bounds[2] = Math.max(bounds[2], nx + 1);
+                            bounds[3] = Math.max(bounds[3], nz + 1);
+                            expanded = true;
                         }
-                    } else if (groundColour != 0xbc614e) {
-                        int ai1[] = new int[4];
-                        ai1[0] = z + x * 96 + 96;
-                        ai1[1] = z + x * 96;
-                        ai1[2] = z + x * 96 + 1;
-                        ai1[3] = z + x * 96 + 96 + 1;
-                        int l19 = tmpModel.createFace(4, ai1, 0xbc614e, groundColour);
-                        world.setTilePosForFace(l19, x, z);
-                        tmpModel.faceTag[l19] = 0x30d40 + l19;
                     }
                 }
             }
+        } while (expanded);
+        
+        return true;
+    }
+
+    /**
+     * Determines if a background load is still in progress.
+     * 
+     * @return
+     */
+    public boolean isLoadingInBackground() {
+        return pendingLoad != null && !pendingLoad.isDone();
+    }
+
+    /**
+     * Places the Sectors from a finished background load into the World.
+     * 
+     * <p>This should be called from the game thread at a frame boundary.
+     * 
+     * @return True if the World has changed.
+     */
+    public boolean applyBackgroundLoad() {
+        
+        if (pendingLoad == null || !pendingLoad.isDone()) {
+            return false;
+        }
+        
+        LoadedSector[] newSectors;
+        try {
+            newSectors = pendingLoad.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            pendingLoad = null;
+        }
+        
+        if (newSectors[0].getLayer() != world.getCurrentLayer()) {
+            // Layer has changed since the load was requested
+            return false;
+        }
+        
+        applyLoadedSectors(pendingSectorX, pendingSectorZ, newSectors);
+        
+        return true;
+    }
+
+    /**
+     * Places the given Sectors into the World.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param newSectors
+     */
+    private void applyLoadedSectors(int sectorX, int sectorZ,
+            LoadedSector[] newSectors) {
+        
+        int prevOriginX = world.getOriginX();
+        int prevOriginZ = world.getOriginZ();
+        world.setLoadedSectors(sectorX, sectorZ, newSectors);
+        
+        // Keep the cache up to date with the Sectors most recently in use
+        for (LoadedSector newSector : newSectors) {
+            sectorCache.put(newSector);
+        }
+
+        // Shift objects
+        int dx = world.getOriginX() - prevOriginX;
+        int dz = world.getOriginZ() - prevOriginZ;
+        moveObjects(dx, dz);
+    }
+
+    /**
+     * Discards the result of any background load.
+     */
+    private void cancelBackgroundLoad() {
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+        }
+    }
+
+    public LoadedSectorCache getSectorCache() {
+        return sectorCache;
+    }
+
+    public SectorPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Sets whether flat ground tiles of the same colour, and straight runs of
+     * the same wall, should be merged into larger faces.
+     * 
+     * <p>This reduces the number of faces to be sorted and drawn, at the cost
+     * of the subtle variation in ambience across the merged tiles. It only
+     * affects Sectors built from now on.
+     * 
+     * @param mergeFaces
+     */
+    public void setMergeFaces(boolean mergeFaces) {
+        this.mergeFaces = mergeFaces;
+    }
+
+    public boolean isMergeFaces() {
+        return mergeFaces;
+    }
+    
+    /**
+     * Loads all required layers of the given sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param currentLayer
+     */
+    private void loadRequiredLayers(int sectorX, int sectorZ, int currentLayer) {
+
+        System.out.println("Loading sector: " + sectorX + ", " + sectorZ +
+                " (" + currentLayer + ")");
+
+        loadLayer(sectorX, sectorZ, currentLayer, true);
+
+        if (currentLayer == 0) {
+
+            // Load upper storeys (they should be visible from the ground floor)
+            loadLayer(sectorX, sectorZ, 1, false);
+            loadLayer(sectorX, sectorZ, 2, false);
 
-            // Create bridges
-            for (int x = 1; x < World.NUM_TILES_X - 1; x++) {
-                for (int z = 1; z < World.NUM_TILES_Z - 1; z++) {
-                    
-                    if (world.getGroundTextureOverlay(x, z) > 0
-                            && Resources.getTileDef(world.getGroundTextureOverlay(x, z) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                        int l7 = Resources.getTileDef(world.getGroundTextureOverlay(x, z) - 1).getColour();
-                        int j10 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z), z * 128);
-                        int l12 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z), z * 128);
-                        int i15 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z + 1),
-                                (z + 1) * 128);
-                        int j17 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z + 1), (z + 1) * 128);
-                        int ai2[] = { j10, l12, i15, j17 };
-                        int i20 = tmpModel.createFace(4, ai2, l7, 0xbc614e);
-                        world.setTilePosForFace(i20, x, z);
-                        tmpModel.faceTag[i20] = 0x30d40 + i20;
-                        
-                    } else if (world.getGroundTextureOverlay(x, z) == 0
-                            || Resources.getTileDef(world.getGroundTextureOverlay(x, z) - 1).getType() != 3) {
-                        if (world.getGroundTextureOverlay(x, z + 1) > 0 && Resources
-                                .getTileDef(world.getGroundTextureOverlay(x, z + 1) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                            int i8 = Resources.getTileDef(world.getGroundTextureOverlay(x, z + 1) - 1).getColour();
-                            int k10 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z), z * 128);
-                            int i13 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z), z * 128);
-                            int j15 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z + 1),
-                                    (z + 1) * 128);
-                            int k17 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z + 1), (z + 1) * 128);
-                            int ai3[] = { k10, i13, j15, k17 };
-                            int j20 = tmpModel.createFace(4, ai3, i8, 0xbc614e);
-                            world.setTilePosForFace(j20, x, z);
-                            tmpModel.faceTag[j20] = 0x30d40 + j20;
-                        }
-                        
-                        if (world.getGroundTextureOverlay(x, z - 1) > 0 && Resources
-                                .getTileDef(world.getGroundTextureOverlay(x, z - 1) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                            int j8 = Resources.getTileDef(world.getGroundTextureOverlay(x, z - 1) - 1).getColour();
-                            int l10 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z), z * 128);
-                            int j13 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z), z * 128);
-                            int k15 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z + 1),
-                                    (z + 1) * 128);
-                            int l17 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z + 1), (z + 1) * 128);
-                            int ai4[] = { l10, j13, k15, l17 };
-                            int k20 = tmpModel.createFace(4, ai4, j8, 0xbc614e);
-                            world.setTilePosForFace(k20, x, z);
-                            tmpModel.faceTag[k20] = 0x30d40 + k20;
-                        }
-                        
-                        if (world.getGroundTextureOverlay(x + 1, z) > 0 && Resources
-                                .getTileDef(world.getGroundTextureOverlay(x + 1, z) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                            int k8 = Resources.getTileDef(world.getGroundTextureOverlay(x + 1, z) - 1).getColour();
-                            int i11 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z), z * 128);
-                            int k13 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z), z * 128);
-                            int l15 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z + 1),
-                                    (z + 1) * 128);
-                            int i18 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z + 1), (z + 1) * 128);
-                            int ai5[] = { i11, k13, l15, i18 };
-                            int l20 = tmpModel.createFace(4, ai5, k8, 0xbc614e);
-                            world.setTilePosForFace(l20, x, z);
-                            tmpModel.faceTag[l20] = 0x30d40 + l20;
-                        }
-                        
-                        if (world.getGroundTextureOverlay(x - 1, z) > 0 && Resources
-                                .getTileDef(world.getGroundTextureOverlay(x - 1, z) - 1).getType() == TileDef.TYPE_BRIDGE) {
-                            int l8 = Resources.getTileDef(world.getGroundTextureOverlay(x - 1, z) - 1).getColour();
-                            int j11 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z), z * 128);
-                            int l13 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z), z * 128);
-                            int i16 = tmpModel.createVertexWithoutDuplication((x + 1) * 128, -world.getGroundElevation(x + 1, z + 1),
-                                    (z + 1) * 128);
-                            int j18 = tmpModel.createVertexWithoutDuplication(x * 128, -world.getGroundElevation(x, z + 1), (z + 1) * 128);
-                            int ai6[] = { j11, l13, i16, j18 };
-                            int i21 = tmpModel.createFace(4, ai6, l8, 0xbc614e);
-                            world.setTilePosForFace(i21, x, z);
-                            tmpModel.faceTag[i21] = 0x30d40 + i21;
-                        }
-                    }
+            // Set the active sectors back to the current layer
+            loadNeighbours(sectorX, sectorZ, currentLayer);
+        }
+    }
+
+    /**
+     * Loads a single layer of the given sector.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param isCurrentLayer
+     */
+    private void loadLayer(int sectorX, int sectorZ, int layer, boolean isCurrentLayer) {
+
+        loadNeighbours(sectorX, sectorZ, layer);
+        
+        // Record which tiles have a roof on this layer
+        for (int x = 0; x < Sector.WIDTH; x++) {
+            for (int z = 0; z < Sector.DEPTH; z++) {
+                if (getRoofTexture(x, z) != 0) {
+                    loadedSector.setRoofed(x, z, layer);
                 }
             }
+        }
+        
+        tmpModel.clear();
 
-            tmpModel.recalculateLighting(true, 40, 48, -50, -10, -50);
+        if (isCurrentLayer) {
             
-            Model[] landscapeModels = tmpModel.createModelArray(0, 0, 1536, 1536, 8, 64, 233, false);
-            world.setLandscapeModels(landscapeModels);
+            /*
+             * Load terrain 
+             */
+    
+            Model[] landscapeModels = new Model[LoadedSector.NUM_CHUNKS];
+            IntStream.range(0, LoadedSector.NUM_CHUNKS).parallel().forEach(chunk -> {
+                TerrainBuilder builder = new TerrainBuilder(chunk);
+                landscapeModels[chunk] = builder.build(layer);
+            });
+            loadedSector.setLandscapeModels(landscapeModels);
 
-            for (int x = 0; x < World.NUM_TILES_X; x++) {
-                for (int z = 0; z < World.NUM_TILES_Z; z++) {
-                    world.setElevation(x, z, world.getGroundElevation(x, z));
+            for (int x = REGION_MIN; x <= REGION_MAX_X; x++) {
+                for (int z = REGION_MIN; z <= REGION_MAX_Z; z++) {
+                    setElevation(x, z, getGroundElevation(x, z));
                 }
             }
         }
@@ -429,33 +945,95 @@ public class WorldLoader {
          * Load walls
          */
         
-        for (int x = 0; x < World.NUM_TILES_X - 1; x++) {
-            for (int z = 0; z < World.NUM_TILES_Z - 1; z++) {
+        createWalls(REGION_MIN, REGION_MIN, REGION_MAX_X, REGION_MAX_Z);
+        tmpModel.recalculateLighting(false, 60, 24, -50, -10, -50);
+        Model[] wallModels = createModelArray(true);
+        loadedSector.setWallModels(layer, wallModels);
+        
+        /*
+         * Load roofs
+         */
+        
+        raiseWalls(REGION_MIN, REGION_MIN, REGION_MAX_X, REGION_MAX_Z);
+        raiseRoofs(REGION_MIN, REGION_MIN, REGION_MAX_X, REGION_MAX_Z);
+        
+        tmpModel.clear();
+        createRoofs(REGION_MIN, REGION_MIN, REGION_MAX_X, REGION_MAX_Z);
+        tmpModel.recalculateLighting(true, 50, 50, -50, -10, -50);
+        Model[] roofModels = createModelArray(true);
+        loadedSector.setRoofModels(layer, roofModels);
+        
+        // Raise heights of upper storeys?
+        for (int x = REGION_MIN; x <= REGION_MAX_X; x++) {
+            for (int z = REGION_MIN; z <= REGION_MAX_Z; z++) {
+                if (getElevation(x, z) >= 0x13880) {
+                    setElevation(x, z, getElevation(x, z) - 0x13880);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the walls within the given region to the temporary Model.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    private void createWalls(int minX, int minZ, int maxX, int maxZ) {
+        
+        // Runs of vertical walls, along the x-axis
+        for (int z = minZ; z < maxZ; z++) {
+            int x = minX;
+            while (x < maxX) {
                 int k3 = getVerticalWall(x, z);
                 if (k3 > 0 && Resources.getDoorDef(k3 - 1).getUnknown() == 0) {
-                    ModelUtils.createWall(world, tmpModel, k3 - 1, x, z, x + 1, z);
+                    x += createWallRun(k3, x, z, 1, 0, maxX - x);
+                } else {
+                    x++;
                 }
-                k3 = getHorizontalWall(x, z);
+            }
+        }
+        
+        // Runs of horizontal walls, along the z-axis
+        for (int x = minX; x < maxX; x++) {
+            int z = minZ;
+            while (z < maxZ) {
+                int k3 = getHorizontalWall(x, z);
                 if (k3 > 0 && Resources.getDoorDef(k3 - 1).getUnknown() == 0) {
-                    ModelUtils.createWall(world, tmpModel, k3 - 1, x, z, x, z + 1);
+                    z += createWallRun(k3, x, z, 0, 1, maxZ - z);
+                } else {
+                    z++;
                 }
-                k3 = getDiagonalWalls(x, z);
+            }
+        }
+        
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
+                int k3 = getDiagonalWalls(x, z);
                 if (k3 > 0 && k3 < 12000 && Resources.getDoorDef(k3 - 1).getUnknown() == 0) {
-                    ModelUtils.createWall(world, tmpModel, k3 - 1, x, z, x + 1, z + 1);
+                    createWall(k3 - 1, x, z, x + 1, z + 1);
                 }
                 if (k3 > 12000 && k3 < 24000 && Resources.getDoorDef(k3 - 12001).getUnknown() == 0) {
-                    ModelUtils.createWall(world, tmpModel, k3 - 12001, x + 1, z, x, z + 1);
+                    createWall(k3 - 12001, x + 1, z, x, z + 1);
                 }
             }
         }
+    }
 
-        tmpModel.recalculateLighting(false, 60, 24, -50, -10, -50);
-        Model[] wallModels = tmpModel.createModelArray(0, 0, 1536, 1536, 8, 64, 338, true);
-        world.setWallModels(layer, wallModels);
-
-        // Raise wall heights
-        for (int x = 0; x < World.NUM_TILES_X - 1; x++) {
-            for (int z = 0; z < World.NUM_TILES_Z - 1; z++) {
+    /**
+     * Raises the corners of each wall within the given region by the height
+     * of the wall, ready for any roof above it.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    private void raiseWalls(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
                 int k6 = getVerticalWall(x, z);
                 if (k6 > 0) {
                     setDoorElevation(k6 - 1, x, z, x + 1, z);
@@ -473,9 +1051,19 @@ public class WorldLoader {
                 }
             }
         }
+    }
 
-        for (int x = 1; x < World.NUM_TILES_X - 1; x++) {
-            for (int z = 1; z < World.NUM_TILES_Z - 1; z++) {
+    /**
+     * Levels the corners of each roofed tile within the given region.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    private void raiseRoofs(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
                 int j9 = getRoofTexture(x, z);
                 if (j9 > 0) {
                     int l11 = x;
@@ -487,10 +1075,10 @@ public class WorldLoader {
                     int l22 = x;
                     int j23 = z + 1;
                     int l23 = 0;
-                    int j24 = world.getElevation(l11, i14);
-                    int l24 = world.getElevation(j16, k18);
-                    int j25 = world.getElevation(j19, j21);
-                    int l25 = world.getElevation(l22, j23);
+                    int j24 = getElevation(l11, i14);
+                    int l24 = getElevation(j16, k18);
+                    int j25 = getElevation(j19, j21);
+                    int l25 = getElevation(l22, j23);
                     if (j24 > 0x13880) {
                         j24 -= 0x13880;
                     }
@@ -519,36 +1107,49 @@ public class WorldLoader {
                         l23 -= 0x13880;
                     }
                     if (j24 < 0x13880) {
-                        world.setElevation(l11, i14, l23);
+                        setElevation(l11, i14, l23);
                     } else {
-                        world.setElevation(l11, i14, 
-                                world.getElevation(l11, i14) - 0x13880);
+                        setElevation(l11, i14, 
+                                getElevation(l11, i14) - 0x13880);
                     }
                     if (l24 < 0x13880) {
-                        world.setElevation(j16, k18, l23);
+                        setElevation(j16, k18, l23);
                     } else {
-                        world.setElevation(j16, k18, 
-                                world.getElevation(j16, k18) - 0x13880);
+                        setElevation(j16, k18, 
+                                getElevation(j16, k18) - 0x13880);
                     }
                     if (j25 < 0x13880) {
-                        world.setElevation(j19, j21, l23);
+                        setElevation(j19, j21, l23);
                     } else {
-                        world.setElevation(j19, j21, 
-                                world.getElevation(j19, j21) - 0x13880);
+                        setElevation(j19, j21, 
+                                getElevation(j19, j21) - 0x13880);
                     }
                     if (l25 < 0x13880) {
-                        world.setElevation(l22, j23, l23);
+                        setElevation(l22, j23, l23);
                     } else {
-                        world.setElevation(l22, j23, 
-                                world.getElevation(l22, j23) - 0x13880);
+                        setElevation(l22, j23, 
+                                getElevation(l22, j23) - 0x13880);
                     }
                 }
             }
         }
+    }
 
-        tmpModel.clear();
-        for (int x = 1; x < World.NUM_TILES_X - 1; x++) {
-            for (int z = 1; z < World.NUM_TILES_Z - 1; z++) {
+    /**
+     * Adds the roofs within the given region to the temporary Model.
+     * 
+     * <p>Roof heights depend on the surrounding walls and roofs, so
+     * {@link #raiseWalls} and {@link #raiseRoofs} must first be called for
+     * every roof that reaches this region.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    private void createRoofs(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
                 int i12 = getRoofTexture(x, z);
                 if (i12 > 0) {
                     int j14 = x;
@@ -567,26 +1168,26 @@ public class WorldLoader {
                     int k26 = i25;
                     int l26 = k25;
                     int i27 = i26;
-                    int j27 = world.getElevation(j14, k16);
-                    int k27 = world.getElevation(l18, k19);
-                    int l27 = world.getElevation(k21, i23);
-                    int i28 = world.getElevation(k23, i24);
+                    int j27 = getElevation(j14, k16);
+                    int k27 = getElevation(l18, k19);
+                    int l27 = getElevation(k21, i23);
+                    int i28 = getElevation(k23, i24);
                     int j28 = Resources.getElevationDef(i12 - 1).getUnknown1();
                     if (isCentreRoof(j14, k16) && j27 < 0x13880) {
                         j27 += j28 + 0x13880;
-                        world.setElevation(j14, k16, j27);
+                        setElevation(j14, k16, j27);
                     }
                     if (isCentreRoof(l18, k19) && k27 < 0x13880) {
                         k27 += j28 + 0x13880;
-                        world.setElevation(l18, k19, k27);
+                        setElevation(l18, k19, k27);
                     }
                     if (isCentreRoof(k21, i23) && l27 < 0x13880) {
                         l27 += j28 + 0x13880;
-                        world.setElevation(k21, i23, l27);
+                        setElevation(k21, i23, l27);
                     }
                     if (isCentreRoof(k23, i24) && i28 < 0x13880) {
                         i28 += j28 + 0x13880;
-                        world.setElevation(k23, i24, i28);
+                        setElevation(k23, i24, i28);
                     }
                     if (j27 >= 0x13880) {
                         j27 -= 0x13880;
@@ -704,160 +1305,1016 @@ public class WorldLoader {
                         if (getRoofTexture(x + 1, z + 1) > 0) {
                             flag1 = false;
                         }
-                        if (!flag1) {
-                            int ai14[] = new int[3];
-                            ai14[0] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
-                            ai14[1] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
-                            ai14[2] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
-                            tmpModel.createFace(3, ai14, i12, 0xbc614e);
-                            int ai16[] = new int[3];
-                            ai16[0] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
-                            ai16[1] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
-                            ai16[2] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
-                            tmpModel.createFace(3, ai16, i12, 0xbc614e);
-                        } else {
-                            int ai15[] = new int[3];
-                            ai15[0] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
-                            ai15[1] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
-                            ai15[2] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
-                            tmpModel.createFace(3, ai15, i12, 0xbc614e);
-                            int ai17[] = new int[3];
-                            ai17[0] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
-                            ai17[1] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
-                            ai17[2] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
-                            tmpModel.createFace(3, ai17, i12, 0xbc614e);
+                        if (!flag1) {
+                            int ai14[] = new int[3];
+                            ai14[0] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
+                            ai14[1] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
+                            ai14[2] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
+                            tmpModel.createFace(3, ai14, i12, 0xbc614e);
+                            int ai16[] = new int[3];
+                            ai16[0] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
+                            ai16[1] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
+                            ai16[2] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
+                            tmpModel.createFace(3, ai16, i12, 0xbc614e);
+                        } else {
+                            int ai15[] = new int[3];
+                            ai15[0] = tmpModel.createVertexWithoutDuplication(k24, j27, i25);
+                            ai15[1] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
+                            ai15[2] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
+                            tmpModel.createFace(3, ai15, i12, 0xbc614e);
+                            int ai17[] = new int[3];
+                            ai17[0] = tmpModel.createVertexWithoutDuplication(l26, l27, i26);
+                            ai17[1] = tmpModel.createVertexWithoutDuplication(j26, i28, i27);
+                            ai17[2] = tmpModel.createVertexWithoutDuplication(k25, k27, k26);
+                            tmpModel.createFace(3, ai17, i12, 0xbc614e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the terrain of a single chunk of the Sector being built.
+     * 
+     * <p>Each chunk is meshed independently, so that all chunks can be built
+     * in parallel. The tiles around the chunk are meshed too, so that the
+     * lighting of its edge vertices matches that of its neighbours, but their
+     * faces are discarded.
+     * 
+     * <p>This must only read from the WorldLoader.
+     */
+    private class TerrainBuilder {
+        
+        /**
+         * First tile processed, relative to the Sector.
+         */
+        private int minX;
+        private int minZ;
+        
+        /**
+         * Last tile processed (exclusive), relative to the Sector.
+         */
+        private int maxX;
+        private int maxZ;
+        
+        /**
+         * Number of tile corners processed in the z-axis.
+         */
+        private int cornersZ;
+        
+        /**
+         * First tile of the chunk, relative to the Sector.
+         */
+        private int chunkX;
+        private int chunkZ;
+        
+        private Model model;
+        
+        /**
+         * Colour of each tile of the chunk that is waiting to be merged with
+         * its neighbours, or 0 if the tile is not to be merged.
+         * 
+         * <p>Indexed by <code>x * CHUNK_DEPTH + z</code>, relative to the
+         * chunk.
+         */
+        private int[] mergeColours =
+                new int[World.CHUNK_WIDTH * World.CHUNK_DEPTH];
+        
+        public TerrainBuilder(int chunk) {
+            
+            chunkX = (chunk % LoadedSector.NUM_CHUNKS_X) * World.CHUNK_WIDTH;
+            chunkZ = (chunk / LoadedSector.NUM_CHUNKS_X) * World.CHUNK_DEPTH;
+            
+            minX = chunkX - 1;
+            minZ = chunkZ - 1;
+            maxX = chunkX + World.CHUNK_WIDTH + 1;
+            maxZ = chunkZ + World.CHUNK_DEPTH + 1;
+            cornersZ = maxZ - minZ + 1;
+            
+            model = terrainModels.poll();
+            if (model == null) {
+                int numTiles = (maxX - minX) * (maxZ - minZ);
+                model = new Model(
+                        numTiles * 2 + 256,
+                        numTiles * 2 + 256,
+                        true,
+                        true,
+                        false,
+                        false,
+                        true);
+            } else {
+                model.clear();
+                Arrays.fill(model.vertexAmbience, (byte) 0);
+            }
+        }
+        
+        /**
+         * Meshes the terrain of this chunk.
+         * 
+         * @param layer
+         * @return The finished chunk model.
+         */
+        public Model build(int layer) {
+            
+            // Set elevation and lighting
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    
+                    int elevation = -getGroundElevation(x, z);
+                    
+                    // Flatten water under bridges
+                    if (isBridge(x, z)
+                            || isBridge(x - 1, z)
+                            || isBridge(x, z - 1)
+                            || isBridge(x - 1, z - 1)) {
+                        elevation = 0;
+                    }
+
+                    int vertexId = model.createVertexWithoutDuplication(
+                            x * World.TILE_WIDTH,
+                            elevation,
+                            z * World.TILE_DEPTH);
+                    
+                    // Vary vertex ambience (consistently, so that vertices
+                    // shared with neighbouring Sectors always match)
+                    int ambience = getVertexAmbience(x, z);
+                    model.setVertexAmbience(vertexId, ambience);
+                }
+            }
+
+            // Set ground colours
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    
+                    int groundTexture = getGroundTexture(x, z);
+                    int groundColour = GROUND_COLOURS[groundTexture];
+                    int groundColour1 = groundColour;
+                    int groundColour2 = groundColour;
+                    
+                    // Each Tile is made of 2 triangles
+                    int triangleIndex = 0;
+                    
+                    // Tiles in upper layers are black
+                    if (layer == 1 || layer == 2) {
+                        groundColour = 0xbc614e;
+                        groundColour1 = 0xbc614e;
+                        groundColour2 = 0xbc614e;
+                    }
+                    
+                    int flags = getTileFlags(x, z);
+                    
+                    if ((flags & TILE_OVERLAY) != 0) {
+                        int groundTextureOverlay = getGroundTextureOverlay(x, z);
+                        int tileType2 = getTileType(x, z);
+                        groundColour = groundColour1 = getOverlayColour(x, z);
+                        
+                        // Set water texture under bridges
+                        if ((flags & TILE_BRIDGE) != 0) {
+                            groundColour = 1;
+                            groundColour1 = 1;
+                            if (groundTextureOverlay == 12) {
+                                groundColour = 31;
+                                groundColour1 = 31;
+                            }
+                        }
+
+                        if ((flags & TILE_BLEND) != 0) {
+                            if ((flags & TILE_DIAGONAL_WALL) != 0) {
+                                if (getOverlayIfRequired(x - 1, z, groundColour2) != 0xbc614e
+                                        && getOverlayIfRequired(x, z - 1, groundColour2) != 0xbc614e) {
+                                    groundColour = getOverlayIfRequired(x - 1, z, groundColour2);
+                                    triangleIndex = 0;
+                                } else if (getOverlayIfRequired(x + 1, z, groundColour2) != 0xbc614e
+                                        && getOverlayIfRequired(x, z + 1, groundColour2) != 0xbc614e) {
+                                    groundColour1 = getOverlayIfRequired(x + 1, z, groundColour2);
+                                    triangleIndex = 0;
+                                } else if (getOverlayIfRequired(x + 1, z, groundColour2) != 0xbc614e
+                                        && getOverlayIfRequired(x, z - 1, groundColour2) != 0xbc614e) {
+                                    groundColour1 = getOverlayIfRequired(x + 1, z, groundColour2);
+                                    triangleIndex = 1;
+                                } else if (getOverlayIfRequired(x - 1, z, groundColour2) != 0xbc614e
+                                        && getOverlayIfRequired(x, z + 1, groundColour2) != 0xbc614e) {
+                                    groundColour = getOverlayIfRequired(x - 1, z, groundColour2);
+                                    triangleIndex = 1;
+                                }
+                            }
+                            
+                        // Create smooth diagonal lines for road / water edges, etc.
+                        } else if ((flags & (TILE_FLOOR | TILE_DIAGONAL_WALL)) != TILE_FLOOR) {
+                            if (getTileType(x - 1, z) != tileType2 && getTileType(x, z - 1) != tileType2) {
+                                groundColour = groundColour2;
+                                triangleIndex = 0;
+                            } else if (getTileType(x + 1, z) != tileType2 && getTileType(x, z + 1) != tileType2) {
+                                groundColour1 = groundColour2;
+                                triangleIndex = 0;
+                            } else if (getTileType(x + 1, z) != tileType2 && getTileType(x, z - 1) != tileType2) {
+                                groundColour1 = groundColour2;
+                                triangleIndex = 1;
+                            } else if (getTileType(x - 1, z) != tileType2 && getTileType(x, z + 1) != tileType2) {
+                                groundColour = groundColour2;
+                                triangleIndex = 1;
+                            }
+                        }
+                    }
+                    
+                    int i17 = ((getGroundElevation(x + 1, z + 1) - getGroundElevation(x + 1, z))
+                            + getGroundElevation(x, z + 1)) - getGroundElevation(x, z);
+                    if (groundColour != groundColour1 || i17 != 0) {
+                        int ai[] = new int[3];
+                        int ai7[] = new int[3];
+                        if (triangleIndex == 0) {
+                            if (groundColour != 0xbc614e) {
+                                ai[0] = getTerrainVertex(x + 1, z);
+                                ai[1] = getTerrainVertex(x, z);
+                                ai[2] = getTerrainVertex(x, z + 1);
+                                int l21 = model.createFace(3, ai, 0xbc614e, groundColour);
+                                model.faceTag[l21] = getGroundFaceTag(x, z);
+                            }
+                            if (groundColour1 != 0xbc614e) {
+                                ai7[0] = getTerrainVertex(x, z + 1);
+                                ai7[1] = getTerrainVertex(x + 1, z + 1);
+                                ai7[2] = getTerrainVertex(x + 1, z);
+                                int i22 = model.createFace(3, ai7, 0xbc614e, groundColour1);
+                                model.faceTag[i22] = getGroundFaceTag(x, z);
+                            }
+                        } else {
+                            if (groundColour != 0xbc614e) {
+                                ai[0] = getTerrainVertex(x, z + 1);
+                                ai[1] = getTerrainVertex(x + 1, z + 1);
+                                ai[2] = getTerrainVertex(x, z);
+                                int j22 = model.createFace(3, ai, 0xbc614e, groundColour);
+                                model.faceTag[j22] = getGroundFaceTag(x, z);
+                            }
+                            if (groundColour1 != 0xbc614e) {
+                                ai7[0] = getTerrainVertex(x + 1, z);
+                                ai7[1] = getTerrainVertex(x, z);
+                                ai7[2] = getTerrainVertex(x + 1, z + 1);
+                                int k22 = model.createFace(3, ai7, 0xbc614e, groundColour1);
+                                model.faceTag[k22] = getGroundFaceTag(x, z);
+                            }
+                        }
+                    } else if (groundColour != 0xbc614e) {
+                        if (isMergeable(x, z, groundColour)) {
+                            mergeColours[(x - chunkX) * World.CHUNK_DEPTH + (z - chunkZ)] =
+                                    groundColour;
+                            continue;
+                        }
+                        int ai1[] = new int[4];
+                        ai1[0] = getTerrainVertex(x + 1, z);
+                        ai1[1] = getTerrainVertex(x, z);
+                        ai1[2] = getTerrainVertex(x, z + 1);
+                        ai1[3] = getTerrainVertex(x + 1, z + 1);
+                        int l19 = model.createFace(4, ai1, 0xbc614e, groundColour);
+                        model.faceTag[l19] = getGroundFaceTag(x, z);
+                    }
+                }
+            }
+            
+            mergeFaces();
+
+            // Create bridges
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    
+                    if (isBridge(x, z)) {
+                        int l7 = getOverlayColour(x, z);
+                        int j10 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z), z * 128);
+                        int l12 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z), z * 128);
+                        int i15 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z + 1),
+                                (z + 1) * 128);
+                        int j17 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z + 1), (z + 1) * 128);
+                        int ai2[] = { j10, l12, i15, j17 };
+                        int i20 = model.createFace(4, ai2, l7, 0xbc614e);
+                        model.faceTag[i20] = getGroundFaceTag(x, z);
+                        
+                    } else if ((getTileFlags(x, z) & TILE_WATER) == 0) {
+                        if (isBridge(x, z + 1)) {
+                            int i8 = getOverlayColour(x, z + 1);
+                            int k10 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z), z * 128);
+                            int i13 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z), z * 128);
+                            int j15 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z + 1),
+                                    (z + 1) * 128);
+                            int k17 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z + 1), (z + 1) * 128);
+                            int ai3[] = { k10, i13, j15, k17 };
+                            int j20 = model.createFace(4, ai3, i8, 0xbc614e);
+                            model.faceTag[j20] = getGroundFaceTag(x, z);
+                        }
+                        
+                        if (isBridge(x, z - 1)) {
+                            int j8 = getOverlayColour(x, z - 1);
+                            int l10 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z), z * 128);
+                            int j13 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z), z * 128);
+                            int k15 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z + 1),
+                                    (z + 1) * 128);
+                            int l17 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z + 1), (z + 1) * 128);
+                            int ai4[] = { l10, j13, k15, l17 };
+                            int k20 = model.createFace(4, ai4, j8, 0xbc614e);
+                            model.faceTag[k20] = getGroundFaceTag(x, z);
+                        }
+                        
+                        if (isBridge(x + 1, z)) {
+                            int k8 = getOverlayColour(x + 1, z);
+                            int i11 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z), z * 128);
+                            int k13 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z), z * 128);
+                            int l15 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z + 1),
+                                    (z + 1) * 128);
+                            int i18 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z + 1), (z + 1) * 128);
+                            int ai5[] = { i11, k13, l15, i18 };
+                            int l20 = model.createFace(4, ai5, k8, 0xbc614e);
+                            model.faceTag[l20] = getGroundFaceTag(x, z);
+                        }
+                        
+                        if (isBridge(x - 1, z)) {
+                            int l8 = getOverlayColour(x - 1, z);
+                            int j11 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z), z * 128);
+                            int l13 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z), z * 128);
+                            int i16 = model.createVertexWithoutDuplication((x + 1) * 128, -getGroundElevation(x + 1, z + 1),
+                                    (z + 1) * 128);
+                            int j18 = model.createVertexWithoutDuplication(x * 128, -getGroundElevation(x, z + 1), (z + 1) * 128);
+                            int ai6[] = { j11, l13, i16, j18 };
+                            int i21 = model.createFace(4, ai6, l8, 0xbc614e);
+                            model.faceTag[i21] = getGroundFaceTag(x, z);
                         }
                     }
                 }
             }
+
+            model.recalculateLighting(true, 40, 48, -50, -10, -50);
+            
+            // The ring of tiles around the chunk is only there to light the
+            // edge vertices; copying out the chunk leaves it behind, and
+            // gives a model no larger than it needs to be
+            Model chunkModel = model.createModelArray(
+                    chunkX * World.TILE_WIDTH,
+                    chunkZ * World.TILE_DEPTH,
+                    World.CHUNK_WIDTH * World.TILE_WIDTH,
+                    World.CHUNK_DEPTH * World.TILE_DEPTH,
+                    1, 1, false)[0];
+            
+            terrainModels.add(model);
+            return chunkModel;
         }
         
-        tmpModel.recalculateLighting(true, 50, 50, -50, -10, -50);
-        Model[] roofModels = tmpModel.createModelArray(0, 0, 1536, 1536, 8, 64, 169, true);
-        world.setRoofModels(layer, roofModels);
+        /**
+         * Gets the index of the terrain vertex at the given tile corner.
+         * 
+         * <p>Terrain vertices are created in order, one per tile corner,
+         * before any other vertices.
+         * 
+         * @param x
+         * @param z
+         * @return
+         */
+        private int getTerrainVertex(int x, int z) {
+            return (x - minX) * cornersZ + (z - minZ);
+        }
         
-        // Raise heights of upper storeys?
-        for (int x = 0; x < World.NUM_TILES_X; x++) {
-            for (int z = 0; z < World.NUM_TILES_Z; z++) {
-                if (world.getElevation(x, z) >= 0x13880) {
-                    world.setElevation(x, z, world.getElevation(x, z) - 0x13880);
+        /**
+         * Determines whether the given tile can be merged into a larger face.
+         * 
+         * <p>Only flat tiles of a plain colour within the chunk are merged;
+         * textures are mapped across a whole face, so would be stretched.
+         * Tiles with a corner at the end of a wall are left alone, since the
+         * wall darkens the terrain vertex there.
+         * 
+         * @param x
+         * @param z
+         * @param colour
+         * @return
+         */
+        private boolean isMergeable(int x, int z, int colour) {
+            
+            if (!mergeFaces || colour >= 0) {
+                return false;
+            }
+            
+            if (x < chunkX || x >= chunkX + World.CHUNK_WIDTH ||
+                    z < chunkZ || z >= chunkZ + World.CHUNK_DEPTH) {
+                return false;
+            }
+            
+            int y = model.vertexY[getTerrainVertex(x, z)];
+            if (model.vertexY[getTerrainVertex(x + 1, z)] != y ||
+                    model.vertexY[getTerrainVertex(x, z + 1)] != y ||
+                    model.vertexY[getTerrainVertex(x + 1, z + 1)] != y) {
+                return false;
+            }
+            
+            return !isWallCorner(x, z) && !isWallCorner(x + 1, z)
+                    && !isWallCorner(x, z + 1) && !isWallCorner(x + 1, z + 1);
+        }
+        
+        /**
+         * Greedily merges the tiles waiting to be merged into rectangles of
+         * the same colour, and creates a face for each.
+         * 
+         * <p>Neighbouring flat tiles share their corners, so tiles of the same
+         * colour are always coplanar.
+         */
+        private void mergeFaces() {
+            
+            for (int x = 0; x < World.CHUNK_WIDTH; x++) {
+                for (int z = 0; z < World.CHUNK_DEPTH; z++) {
+                    
+                    int colour = mergeColours[x * World.CHUNK_DEPTH + z];
+                    if (colour == 0) {
+                        continue;
+                    }
+                    
+                    // Grow along the z-axis, then along the x-axis
+                    int depth = 1;
+                    while (depth < MAX_MERGED_TILES &&
+                            z + depth < World.CHUNK_DEPTH &&
+                            mergeColours[x * World.CHUNK_DEPTH + z + depth] == colour) {
+                        depth++;
+                    }
+                    
+                    int width = 1;
+                    while (width < MAX_MERGED_TILES &&
+                            x + width < World.CHUNK_WIDTH &&
+                            canMerge(x + width, z, depth, colour)) {
+                        width++;
+                    }
+                    
+                    for (int i = 0; i < width; i++) {
+                        for (int j = 0; j < depth; j++) {
+                            mergeColours[(x + i) * World.CHUNK_DEPTH + z + j] = 0;
+                        }
+                    }
+                    
+                    createMergedFace(chunkX + x, chunkZ + z, width, depth, colour);
+                }
+            }
+        }
+        
+        /**
+         * Determines whether a column of tiles is waiting to be merged with
+         * the given colour.
+         * 
+         * @param x Tile co-ordinate relative to the chunk.
+         * @param z Tile co-ordinate relative to the chunk.
+         * @param depth
+         * @param colour
+         * @return
+         */
+        private boolean canMerge(int x, int z, int depth, int colour) {
+            for (int j = 0; j < depth; j++) {
+                if (mergeColours[x * World.CHUNK_DEPTH + z + j] != colour) {
+                    return false;
                 }
             }
+            return true;
+        }
+        
+        /**
+         * Creates a single face covering a rectangle of tiles.
+         * 
+         * <p>The face includes every tile corner along its edges, so that it
+         * meets its neighbours without any cracks. Its vertices run in the
+         * same direction as those of a single tile, starting such that the
+         * first 3 are not collinear.
+         * 
+         * @param x0 Tile co-ordinate relative to the Sector.
+         * @param z0 Tile co-ordinate relative to the Sector.
+         * @param width
+         * @param depth
+         * @param colour
+         */
+        private void createMergedFace(
+                int x0, int z0, int width, int depth, int colour) {
+            
+            int x1 = x0 + width;
+            int z1 = z0 + depth;
+            int numVertices = (width + depth) * 2;
+            int[] vertices = new int[numVertices];
+            
+            // The corner before (x0, z0) comes first
+            int i = numVertices - (width - 1);
+            
+            for (int x = x1; x > x0; x--) {
+                vertices[i++ % numVertices] = getTerrainVertex(x, z0);
+            }
+            for (int z = z0; z < z1; z++) {
+                vertices[i++ % numVertices] = getTerrainVertex(x0, z);
+            }
+            for (int x = x0; x < x1; x++) {
+                vertices[i++ % numVertices] = getTerrainVertex(x, z1);
+            }
+            for (int z = z1; z > z0; z--) {
+                vertices[i++ % numVertices] = getTerrainVertex(x1, z);
+            }
+            
+            int face = model.createFace(numVertices, vertices, 0xbc614e, colour);
+            model.faceTag[face] = getGroundFaceTag(x0, z0, width, depth);
         }
+        
     }
 
-    private void setCurrentSector(int sectorX, int sectorZ, int layer) {
+    /**
+     * Builds the simplified terrain of the Sector being built.
+     * 
+     * <p>Each face covers a square of tiles, coloured according to the tile
+     * at its centre. Walls, roofs and bridges are left out entirely.
+     * 
+     * @param layer
+     */
+    private void loadFarTerrain(int layer) {
+        
+        tmpModel.clear();
+        
+        int corners = Sector.DEPTH / FAR_TERRAIN_STEP + 1;
+        
+        for (int x = 0; x <= Sector.WIDTH; x += FAR_TERRAIN_STEP) {
+            for (int z = 0; z <= Sector.DEPTH; z += FAR_TERRAIN_STEP) {
+                int vertexId = tmpModel.createVertexWithoutDuplication(
+                        x * World.TILE_WIDTH,
+                        -getGroundElevation(x, z),
+                        z * World.TILE_DEPTH);
+                tmpModel.setVertexAmbience(vertexId, getVertexAmbience(x, z));
+            }
+        }
+        
+        for (int x = 0; x < Sector.WIDTH; x += FAR_TERRAIN_STEP) {
+            for (int z = 0; z < Sector.DEPTH; z += FAR_TERRAIN_STEP) {
+                
+                int colour = getFarTerrainColour(layer,
+                        x + FAR_TERRAIN_STEP / 2,
+                        z + FAR_TERRAIN_STEP / 2);
+                if (colour == 0xbc614e) {
+                    continue;
+                }
+                
+                int vertex = (x / FAR_TERRAIN_STEP) * corners + z / FAR_TERRAIN_STEP;
+                int[] vertices = {
+                        vertex + corners,
+                        vertex,
+                        vertex + 1,
+                        vertex + corners + 1 };
+                tmpModel.createFace(4, vertices, 0xbc614e, colour);
+            }
+        }
         
-        world.setSector(0, Resources.loadSector(sectorX - 1, sectorZ - 1, layer));
-        world.setSector(1, Resources.loadSector(sectorX, sectorZ - 1, layer));
-        world.setSector(2, Resources.loadSector(sectorX - 1, sectorZ, layer));
-        world.setSector(3, Resources.loadSector(sectorX, sectorZ, layer));
+        tmpModel.recalculateLighting(true, 40, 48, -50, -10, -50);
         
-        setGroundTextureOverlays();
+        Model[] farTerrainModels = tmpModel.createModelArray(0, 0,
+                Sector.WIDTH * World.TILE_WIDTH,
+                Sector.DEPTH * World.TILE_DEPTH,
+                1, 1, true);
+        loadedSector.setFarTerrainModel(farTerrainModels[0]);
     }
 
-    private int getRoofTexture(int x, int z) {
+    /**
+     * Gets the colour of a tile, as used by the simplified terrain.
+     * 
+     * @param layer
+     * @param x
+     * @param z
+     * @return
+     */
+    private int getFarTerrainColour(int layer, int x, int z) {
         
-        if (x < 0 || x >= World.NUM_TILES_X || z < 0 || z >= World.NUM_TILES_Z) {
-            return 0;
+        // Tiles in upper layers are black
+        if (layer == 1 || layer == 2) {
+            return 0xbc614e;
         }
         
-        byte byte0 = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            byte0 = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            byte0 = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            byte0 = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        int groundTextureOverlay = getGroundTextureOverlay(x, z);
+        if (groundTextureOverlay == 0) {
+            return GROUND_COLOURS[getGroundTexture(x, z)];
         }
         
-        return world.getSector(byte0).getTile(x, z).roofTexture;
+        if (isBridge(x, z)) {
+            // Show the water beneath
+            return groundTextureOverlay == 12 ? 31 : 1;
+        }
+        return getOverlayColour(x, z);
     }
 
-    private int getVerticalWall(int x, int z) {
+    /**
+     * Loads the Sector being built and its immediate neighbours, for the given
+     * layer.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     */
+    private void loadNeighbours(int sectorX, int sectorZ, int layer) {
         
-        if (x < 0 || x >= World.NUM_TILES_X || z < 0 || z >= World.NUM_TILES_Z) {
-            return 0;
+        for (int i = 0; i < neighbours.length; i++) {
+            neighbours[i] = Resources.loadSector(
+                    sectorX + i % 3 - 1,
+                    sectorZ + i / 3 - 1,
+                    layer);
         }
         
-        byte sector = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            sector = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        for (int i = 0; i < neighbours.length; i++) {
+            tiles.setSector(
+                    (i % 3) * Sector.WIDTH,
+                    (i / 3) * Sector.DEPTH,
+                    neighbours[i]);
         }
         
-        return world.getSector(sector).getTile(x, z).verticalWall & 0xff;
+        // Sectors are processed in order, so each one still sees the raw
+        // overlays of the Sectors after it
+        for (int i = 0; i < neighbours.length; i++) {
+            setGroundTextureOverlays(i);
+        }
+        
+        classifyTiles();
+        
+        if (layer == loadedSector.getLayer()) {
+            loadedSector.setSector(neighbours[4]);
+        }
     }
 
-    private int getHorizontalWall(int x, int z) {
+    /**
+     * Loads the tiles within the given bounds into the grid, for the Sector
+     * being rebuilt.
+     * 
+     * <p>Unlike {@link #loadNeighbours}, the rest of the grid is left as it
+     * was, so only tiles within these bounds may be used until the grid is
+     * next filled. The tiles of any Sectors loaded in the World are taken
+     * from the World itself, so that changes made since they were loaded are
+     * included. Only the game thread may call this.
+     * 
+     * @param sectorX
+     * @param sectorZ
+     * @param layer
+     * @param minX Tile co-ordinate relative to the Sector being rebuilt.
+     * @param minZ Tile co-ordinate relative to the Sector being rebuilt.
+     * @param maxX Tile co-ordinate relative to the Sector being rebuilt
+     * (exclusive).
+     * @param maxZ Tile co-ordinate relative to the Sector being rebuilt
+     * (exclusive).
+     */
+    private void loadRegion(int sectorX, int sectorZ, int layer,
+            int minX, int minZ, int maxX, int maxZ) {
         
-        if (x < 0 || x >= World.NUM_TILES_X || z < 0 || z >= World.NUM_TILES_Z) {
-            return 0;
+        boolean[] fromWorld = new boolean[neighbours.length];
+        
+        for (int i = 0; i < neighbours.length; i++) {
+            
+            // Placeholder overlays look at the next tile along, so copy one
+            // more row and column than are needed
+            int offsetX = (i % 3 - 1) * Sector.WIDTH;
+            int offsetZ = (i / 3 - 1) * Sector.DEPTH;
+            int x1 = Math.max(minX - offsetX, 0);
+            int z1 = Math.max(minZ - offsetZ, 0);
+            int x2 = Math.min(maxX + 1 - offsetX, Sector.WIDTH);
+            int z2 = Math.min(maxZ + 1 - offsetZ, Sector.DEPTH);
+            if (x1 >= x2 || z1 >= z2) {
+                continue;
+            }
+            
+            LoadedSector loaded = world.getLoadedSector(
+                    sectorX + i % 3 - 1,
+                    sectorZ + i / 3 - 1);
+            fromWorld[i] = loaded != null && loaded.getLayer() == layer;
+            neighbours[i] = fromWorld[i]
+                    ? loaded.getSector()
+                    : Resources.loadSector(
+                            sectorX + i % 3 - 1,
+                            sectorZ + i / 3 - 1,
+                            layer);
+            tiles.setSector(
+                    offsetX + Sector.WIDTH,
+                    offsetZ + Sector.DEPTH,
+                    neighbours[i],
+                    x1, z1, x2, z2);
         }
         
-        byte sector = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            sector = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        // Sectors in the World had their overlays resolved when loaded
+        for (int i = 0; i < neighbours.length; i++) {
+            int offsetX = (i % 3 - 1) * Sector.WIDTH;
+            int offsetZ = (i / 3 - 1) * Sector.DEPTH;
+            int x1 = Math.max(minX - offsetX, 0);
+            int z1 = Math.max(minZ - offsetZ, 0);
+            int x2 = Math.min(maxX - offsetX, Sector.WIDTH);
+            int z2 = Math.min(maxZ - offsetZ, Sector.DEPTH);
+            if (!fromWorld[i] && x1 < x2 && z1 < z2) {
+                setGroundTextureOverlays(i, x1, z1, x2, z2);
+            }
         }
         
-        return world.getSector(sector).getTile(x, z).horizontalWall & 0xff;
+        classifyTiles(
+                minX + Sector.WIDTH,
+                minZ + Sector.DEPTH,
+                maxX + Sector.WIDTH,
+                maxZ + Sector.DEPTH);
+    }
+
+    private int getGroundElevation(int x, int z) {
+        return (tiles.getGroundElevation(x + Sector.WIDTH, z + Sector.DEPTH) & 0xff) * 3;
+    }
+
+    private int getGroundTexture(int x, int z) {
+        return tiles.getTexture(x + Sector.WIDTH, z + Sector.DEPTH) & 0xff;
+    }
+
+    private int getGroundTextureOverlay(int x, int z) {
+        return tiles.getGroundOverlay(x + Sector.WIDTH, z + Sector.DEPTH) & 0xff;
+    }
+
+    private int getRoofTexture(int x, int z) {
+        return tiles.getRoofTexture(x + Sector.WIDTH, z + Sector.DEPTH);
+    }
+
+    private int getVerticalWall(int x, int z) {
+        return tiles.getVerticalWall(x + Sector.WIDTH, z + Sector.DEPTH) & 0xff;
+    }
+
+    private int getHorizontalWall(int x, int z) {
+        return tiles.getHorizontalWall(x + Sector.WIDTH, z + Sector.DEPTH) & 0xff;
     }
 
     private int getDiagonalWalls(int x, int z) {
+        return tiles.getDiagonalWalls(x + Sector.WIDTH, z + Sector.DEPTH);
+    }
+
+    /**
+     * Determines whether the given tile corner lies at the end of any wall
+     * that is drawn.
+     * 
+     * <p>Each wall darkens the terrain vertices at its ends.
+     * 
+     * @param x
+     * @param z
+     * @return
+     */
+    private boolean isWallCorner(int x, int z) {
+        return isDrawnWall(getVerticalWall(x, z))
+                || isDrawnWall(getVerticalWall(x - 1, z))
+                || isDrawnWall(getHorizontalWall(x, z))
+                || isDrawnWall(getHorizontalWall(x, z - 1))
+                || isDrawnDiagonalWall(getDiagonalWalls(x, z), 0)
+                || isDrawnDiagonalWall(getDiagonalWalls(x - 1, z - 1), 0)
+                || isDrawnDiagonalWall(getDiagonalWalls(x - 1, z), 12000)
+                || isDrawnDiagonalWall(getDiagonalWalls(x, z - 1), 12000);
+    }
+
+    private static boolean isDrawnWall(int wall) {
+        return wall > 0 && Resources.getDoorDef(wall - 1).getUnknown() == 0;
+    }
+
+    /**
+     * Determines whether a tile's diagonal wall is drawn.
+     * 
+     * @param diagonalWalls Diagonal wall value, as stored in the Sector.
+     * @param offset 0 for a wall running from (x, z) to (x + 1, z + 1), or
+     * 12000 for one running from (x + 1, z) to (x, z + 1).
+     * @return
+     */
+    private static boolean isDrawnDiagonalWall(int diagonalWalls, int offset) {
+        int wall = diagonalWalls - offset;
+        return wall < 12000 && isDrawnWall(wall);
+    }
+
+    private int getElevation(int x, int z) {
+        return elevation[x + Sector.WIDTH][z + Sector.DEPTH];
+    }
+
+    private void setElevation(int x, int z, int elevation) {
+        this.elevation[x + Sector.WIDTH][z + Sector.DEPTH] = elevation;
+    }
+
+    /**
+     * Gets the faceTag used for the ground face at the given tile.
+     * 
+     * @param x
+     * @param z
+     * @return
+     */
+    private int getGroundFaceTag(int x, int z) {
+        return World.getGroundFaceTag(
+                loadedSector.getSectorX(), loadedSector.getSectorZ(), x, z);
+    }
+
+    /**
+     * Gets the faceTag used for a ground face covering a rectangle of tiles.
+     * 
+     * @param x
+     * @param z
+     * @param width
+     * @param depth
+     * @return
+     */
+    private int getGroundFaceTag(int x, int z, int width, int depth) {
+        return World.getGroundFaceTag(loadedSector.getSectorX(),
+                loadedSector.getSectorZ(), x, z, width, depth);
+    }
+
+    /**
+     * Gets the ambience of the terrain vertex at the given tile corner.
+     * 
+     * <p>This is derived from the absolute position of the corner, so that it
+     * does not depend on which Sector is being built.
+     * 
+     * @param x
+     * @param z
+     * @return Ambience in the range [-5, 4].
+     */
+    private int getVertexAmbience(int x, int z) {
+        int absX = loadedSector.getSectorX() * Sector.WIDTH + x;
+        int absZ = loadedSector.getSectorZ() * Sector.DEPTH + z;
+        int hash = absX * 0x1f1f1f1f ^ absZ * 0x5bd1e995;
+        hash ^= hash >>> 15;
+        hash *= 0x2c1b3c6d;
+        hash ^= hash >>> 12;
+        return Math.floorMod(hash, 10) - 5;
+    }
+
+    /**
+     * Splits the temporary Model into the chunks of the Sector being built.
+     * 
+     * <p>Faces lying outside the Sector are discarded.
+     * 
+     * @param unpickable
+     * @return
+     */
+    private Model[] createModelArray(boolean unpickable) {
+        return createModelArray(unpickable, -1);
+    }
+
+    /**
+     * Splits the temporary Model into some of the chunks of the Sector being
+     * built.
+     * 
+     * @param unpickable
+     * @param chunks Bitmask of the chunks wanted, or -1 for all of them.
+     * @return Models of the wanted chunks; the others are null.
+     */
+    private Model[] createModelArray(boolean unpickable, int chunks) {
+        return tmpModel.createModelArray(0, 0,
+                World.CHUNK_WIDTH * World.TILE_WIDTH,
+                World.CHUNK_DEPTH * World.TILE_DEPTH,
+                LoadedSector.NUM_CHUNKS_X,
+                LoadedSector.NUM_CHUNKS,
+                unpickable,
+                chunks);
+    }
+
+    /**
+     * Adds a wall to the temporary Model.
+     * 
+     * @param wallIndex
+     * @param x1
+     * @param z1
+     * @param x2
+     * @param z2
+     */
+    private void createWall(int wallIndex, int x1, int z1, int x2, int z2) {
+        ModelUtils.createWall(loadedSector, tmpModel, wallIndex,
+                x1, z1, getElevation(x1, z1),
+                x2, z2, getElevation(x2, z2));
+    }
+
+    /**
+     * Adds a run of vertical or horizontal walls to the temporary Model,
+     * starting with the wall at the given tile.
+     * 
+     * <p>The run continues while the same wall carries on in a straight
+     * line at a constant slope. Runs never cross into another chunk, so that
+     * each chunk's walls can still be rebuilt on their own.
+     * 
+     * @param wall Wall ID, as stored in the Sector.
+     * @param x
+     * @param z
+     * @param dx Direction of the run; 1 for vertical walls.
+     * @param dz Direction of the run; 1 for horizontal walls.
+     * @param maxLength Number of tiles left in the region being built.
+     * @return Number of walls in the run.
+     */
+    private int createWallRun(
+            int wall, int x, int z, int dx, int dz, int maxLength) {
         
-        if (x < 0 || x >= World.NUM_TILES_X || z < 0 || z >= World.NUM_TILES_Z) {
-            return 0;
+        int elevation = getElevation(x, z);
+        int elevationStep = getElevation(x + dx, z + dz) - elevation;
+        int length = 1;
+        
+        while (mergeFaces && length < MAX_MERGED_TILES && length < maxLength) {
+            
+            int nextX = x + length * dx;
+            int nextZ = z + length * dz;
+            
+            if (Math.floorMod(nextX * dx + nextZ * dz,
+                    dx != 0 ? World.CHUNK_WIDTH : World.CHUNK_DEPTH) == 0) {
+                // Start of the next chunk
+                break;
+            }
+            
+            int nextWall = dx != 0
+                    ? getVerticalWall(nextX, nextZ)
+                    : getHorizontalWall(nextX, nextZ);
+            if (nextWall != wall) {
+                break;
+            }
+            
+            if (getElevation(nextX + dx, nextZ + dz) -
+                    getElevation(nextX, nextZ) != elevationStep) {
+                break;
+            }
+            
+            length++;
         }
         
-        byte sector = 0;
-        if (x >= Sector.WIDTH && z < Sector.DEPTH) {
-            sector = 1;
-            x -= Sector.WIDTH;
-        } else if (x < Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 2;
-            z -= Sector.DEPTH;
-        } else if (x >= Sector.WIDTH && z >= Sector.DEPTH) {
-            sector = 3;
-            x -= Sector.WIDTH;
-            z -= Sector.DEPTH;
+        ModelUtils.createWallRun(loadedSector, tmpModel, wall - 1,
+                x, z, dx, dz, elevation, elevationStep, length);
+        return length;
+    }
+
+    /**
+     * Classifies every tile in the grid according to its overlay and walls.
+     * 
+     * <p>This must be called whenever the grid is refilled.
+     */
+    private void classifyTiles() {
+        classifyTiles(0, 0, tiles.getWidth(), tiles.getDepth());
+    }
+
+    /**
+     * Classifies the tiles within the given bounds of the grid.
+     * 
+     * @param minX
+     * @param minZ
+     * @param maxX Exclusive.
+     * @param maxZ Exclusive.
+     */
+    private void classifyTiles(int minX, int minZ, int maxX, int maxZ) {
+        
+        int[] overlayTypes = new int[overlayColours.length];
+        for (int overlay = 1; overlay < overlayColours.length; overlay++) {
+            TileDef tileDef = Resources.getTileDef(overlay - 1);
+            if (tileDef != null) {
+                overlayTypes[overlay] = tileDef.getType();
+                overlayColours[overlay] = tileDef.getColour();
+            }
         }
         
-        return world.getSector(sector).getTile(x, z).diagonalWalls;
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
+                
+                int flags = 0;
+                
+                int overlay = tiles.getGroundOverlay(x, z) & 0xff;
+                if (overlay > 0) {
+                    flags |= TILE_OVERLAY;
+                    switch (overlayTypes[overlay]) {
+                    case 2:
+                        flags |= TILE_FLOOR;
+                        break;
+                    case 3:
+                        flags |= TILE_WATER;
+                        break;
+                    case TileDef.TYPE_BRIDGE:
+                        flags |= TILE_BRIDGE;
+                        break;
+                    case 5:
+                        flags |= TILE_BLEND;
+                        break;
+                    }
+                }
+                
+                int diagonalWalls = tiles.getDiagonalWalls(x, z);
+                if (diagonalWalls > 0 && diagonalWalls < 24000) {
+                    flags |= TILE_DIAGONAL_WALL;
+                }
+                
+                tileFlags[x * tiles.getDepth() + z] = (byte) flags;
+            }
+        }
+    }
+
+    private int getTileFlags(int x, int z) {
+        x += Sector.WIDTH;
+        z += Sector.DEPTH;
+        if (!tiles.contains(x, z)) {
+            return 0;
+        }
+        return tileFlags[x * tiles.getDepth() + z];
+    }
+
+    private boolean isBridge(int x, int z) {
+        return (getTileFlags(x, z) & TILE_BRIDGE) != 0;
+    }
+
+    private int getOverlayColour(int x, int z) {
+        return overlayColours[getGroundTextureOverlay(x, z)];
     }
 
     private int getTileType(int x, int z) {
-        int texture = world.getGroundTextureOverlay(x, z);
-        if (texture == 0) {
+        int flags = getTileFlags(x, z);
+        if ((flags & TILE_OVERLAY) == 0) {
             return -1;
         }
-        return Resources.getTileDef(texture - 1).getType() != 2 ? 0 : 1;
+        return (flags & TILE_FLOOR) == 0 ? 0 : 1;
     }
 
     private int getOverlayIfRequired(int x, int z, int underlay) {
-        int texture = world.getGroundTextureOverlay(x, z);
-        if (texture == 0) {
+        if ((getTileFlags(x, z) & TILE_OVERLAY) == 0) {
             return underlay;
         }
-        return Resources.getTileDef(texture - 1).getColour();
+        return getOverlayColour(x, z);
     }
 
     private boolean isCentreRoof(int x, int z) {
@@ -876,33 +2333,76 @@ public class WorldLoader {
 
     private void setDoorElevation(int doorIndex, int x1, int z1, int x2, int z2) {
         int heightIncrement = Resources.getDoorDef(doorIndex).getHeight();
-        if (world.getElevation(x1, z1) < 0x13880) {
-            world.setElevation(x1, z1,
-                    world.getElevation(x1, z1) + 0x13880 + heightIncrement);
+        if (getElevation(x1, z1) < 0x13880) {
+            setElevation(x1, z1,
+                    getElevation(x1, z1) + 0x13880 + heightIncrement);
         }
-        if (world.getElevation(x2, z2) < 0x13880) {
-            world.setElevation(x2, z2,
-                    world.getElevation(x2, z2) + 0x13880 + heightIncrement);
+        if (getElevation(x2, z2) < 0x13880) {
+            setElevation(x2, z2,
+                    getElevation(x2, z2) + 0x13880 + heightIncrement);
         }
     }
 
-    private void setGroundTextureOverlays() {
-        for (int x = 0; x < World.NUM_TILES_X; x++) {
-            for (int z = 0; z < World.NUM_TILES_Z; z++) {
+    /**
+     * Resolves the placeholder overlay (250) of one of the neighbouring
+     * Sectors.
+     * 
+     * <p>Tiles on the far edge of the Sector compare against the raw overlay
+     * of the next Sector, so the result does not depend on which Sector is
+     * being built.
+     * 
+     * @param i Index of the Sector within the neighbours.
+     */
+    private void setGroundTextureOverlays(int i) {
+        setGroundTextureOverlays(i, 0, 0, Sector.WIDTH, Sector.DEPTH);
+    }
+
+    /**
+     * Resolves the placeholder overlay (250) within the given bounds of one
+     * of the neighbouring Sectors.
+     * 
+     * @param i Index of the Sector within the neighbours.
+     * @param minX Tile co-ordinate relative to that Sector.
+     * @param minZ Tile co-ordinate relative to that Sector.
+     * @param maxX Tile co-ordinate relative to that Sector (exclusive).
+     * @param maxZ Tile co-ordinate relative to that Sector (exclusive).
+     */
+    private void setGroundTextureOverlays(int i,
+            int minX, int minZ, int maxX, int maxZ) {
+        
+        int offsetX = (i % 3 - 1) * Sector.WIDTH;
+        int offsetZ = (i / 3 - 1) * Sector.DEPTH;
+        
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
+                
+                Sector sector = neighbours[i];
                 
-                if (world.getGroundTextureOverlay(x, z) != 250) {
+                if ((sector.getGroundOverlay(x, z) & 0xff) != 250) {
                     continue;
                 }
                 
-                if (x == 47 && world.getGroundTextureOverlay(x + 1, z) != 250
-                        && world.getGroundTextureOverlay(x + 1, z) != 2) {
-                    world.setGroundTextureOverlay(x, z, 9);
-                } else if (z == 47 && world.getGroundTextureOverlay(x, z + 1) != 250
-                        && world.getGroundTextureOverlay(x, z + 1) != 2) {
-                    world.setGroundTextureOverlay(x, z, 9);
+                int east = getGroundTextureOverlay(offsetX + x + 1, offsetZ + z);
+                int south = getGroundTextureOverlay(offsetX + x, offsetZ + z + 1);
+                byte groundOverlay;
+                
+                if (x == Sector.WIDTH - 1 && east != 250 && east != 2) {
+                    groundOverlay = 9;
+                } else if (z == Sector.DEPTH - 1 && south != 250 && south != 2) {
+                    groundOverlay = 9;
                 } else {
-                    world.setGroundTextureOverlay(x, z, 2);
+                    groundOverlay = 2;
                 }
+                
+                sector.setGroundOverlay(x, z, groundOverlay);
+                tiles.setGroundOverlay(
+                        offsetX + x + Sector.WIDTH,
+                        offsetZ + z + Sector.DEPTH,
+                        groundOverlay);
+                tiles.setCollision(
+                        offsetX + x + Sector.WIDTH,
+                        offsetZ + z + Sector.DEPTH,
+                        Collision.update(sector, x, z));
             }
         }
     }
@@ -958,6 +2458,9 @@ public class WorldLoader {
         } 
         
         world.setCurrentLayer(currentLayer + 1);
+        
+        // Sectors prefetched for the old layer are no longer needed
+        prefetcher.clear();
         reloadCurrentSector();
     }
 
@@ -980,6 +2483,9 @@ public class WorldLoader {
         }
         
         world.setCurrentLayer(newLayer);
+        
+        // Sectors prefetched for the old layer are no longer needed
+        prefetcher.clear();
         reloadCurrentSector();
     }
 